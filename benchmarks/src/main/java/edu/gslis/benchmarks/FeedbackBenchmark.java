@@ -0,0 +1,71 @@
+package edu.gslis.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.queries.GQuery;
+import edu.gslis.queries.expansion.FeedbackRelevanceModel;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+
+/**
+ * RM3: a relevance model from the first-round hits (vectors read from the index), interpolated
+ * with the original query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedbackBenchmark {
+	@Param({"20"})
+	public int fbDocs;
+
+	@Param({"20"})
+	public int fbTerms;
+
+	private IndexWrapper index;
+	private Stopper stopper = new Stopper();
+	private GQuery query;
+	private SearchHits firstRound;
+
+	@Setup
+	public void setUp() throws Exception {
+		index = TrecTestIndex.get();
+		query = TrecTestIndex.query(ScoringBenchmark.QUERY);
+		firstRound = index.runQuery(query, TrecTestIndex.NUM_HITS);
+	}
+
+	@Benchmark
+	public GQuery rm3() {
+		FeedbackRelevanceModel rm = new FeedbackRelevanceModel();
+		rm.setIndex(index);
+		rm.setStopper(stopper);
+		rm.setOriginalQuery(query);
+		rm.setRes(firstRound, fbDocs);
+		rm.setTermCount(fbTerms);
+		rm.build();
+
+		GQuery expanded = rm.asGquery();
+		FeatureVector original = query.getFeatureVector().deepCopy();
+		original.normalize();
+		FeatureVector fbVector = expanded.getFeatureVector();
+		fbVector.normalize();
+		expanded.setFeatureVector(FeatureVector.interpolate(original, fbVector, 0.5));
+		return expanded;
+	}
+}
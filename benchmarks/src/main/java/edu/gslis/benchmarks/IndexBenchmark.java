@@ -0,0 +1,62 @@
+package edu.gslis.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Per-document index access on IndexWrapperLuceneImpl, cycling through the documents of a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+	private IndexWrapper index;
+	private List<String> docnos;
+	private int[] docIDs;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		index = TrecTestIndex.get();
+		SearchHits hits = index.runQuery(TrecTestIndex.query(TrecTestIndex.BROAD_QUERY), TrecTestIndex.NUM_HITS);
+		docnos = TrecTestIndex.docnos(hits);
+		docIDs = new int[hits.size()];
+		for (int i = 0; i < docIDs.length; i++) {
+			docIDs[i] = hits.getHit(i).getDocID();
+		}
+	}
+
+	private int next() {
+		if (++next == docIDs.length)
+			next = 0;
+		return next;
+	}
+
+	@Benchmark
+	public int docnoLookup() {
+		return index.getDocId(docnos.get(next()));
+	}
+
+	@Benchmark
+	public FeatureVector getDocVector() {
+		return index.getDocVector(docIDs[next()], null);
+	}
+}
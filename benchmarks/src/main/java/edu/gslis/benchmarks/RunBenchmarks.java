@@ -0,0 +1,28 @@
+package edu.gslis.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks, writing results as JSON to jmh-result.json unless -rf or -rff is
+ * given, so runs can be compared over time.  Other arguments are passed to JMH, e.g.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar Scoring -p scorer=dirichlet,plm -rff scoring.json
+ */
+public class RunBenchmarks {
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (!jmhArgs.contains("-rf")) {
+			jmhArgs.add("-rf");
+			jmhArgs.add("json");
+		}
+		if (!jmhArgs.contains("-rff")) {
+			jmhArgs.add("-rff");
+			jmhArgs.add(DEFAULT_RESULT_FILE);
+		}
+		org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+	}
+}
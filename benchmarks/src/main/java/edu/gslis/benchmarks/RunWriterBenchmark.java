@@ -0,0 +1,59 @@
+package edu.gslis.benchmarks;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.gslis.output.TrecRunWriter;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * Formatting and writing one query's TrecTestIndex.NUM_HITS lines in trec_eval format, to a
+ * stream that discards them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunWriterBenchmark {
+	private SearchHits hits = new SearchHits();
+	private TrecRunWriter writer;
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < TrecTestIndex.NUM_HITS; i++) {
+			SearchHit hit = new SearchHit();
+			hit.setDocno("FT911-" + (i + 1));
+			hit.setScore(-5.0 - i / 997.0);
+			hits.add(hit);
+		}
+		writer = new TrecRunWriter("benchmark", new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		writer.close();
+	}
+
+	@Benchmark
+	public void writeRun() {
+		writer.write(hits, "301");
+	}
+}
@@ -0,0 +1,81 @@
+package edu.gslis.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.gslis.docscoring.QueryDocScorer;
+import edu.gslis.docscoring.ScorerBM25;
+import edu.gslis.docscoring.ScorerDirichlet;
+import edu.gslis.docscoring.ScorerPLM;
+import edu.gslis.docscoring.ScorerSMART;
+import edu.gslis.docscoring.support.IndexBackedCollectionStats;
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * Time to score TrecTestIndex.NUM_HITS hydrated hits for a three-term query.  PLM reads each
+ * document's term positions from the index as it scores, as it does in a run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+	public static final String QUERY = "market company year";
+
+	@Param({"dirichlet", "bm25", "smart", "plm"})
+	public String scorer;
+
+	private QueryDocScorer queryScorer;
+	private SearchHits hits;
+
+	@Setup
+	public void setUp() throws Exception {
+		IndexWrapper index = TrecTestIndex.get();
+		hits = TrecTestIndex.hydratedHits(index, null);
+
+		IndexBackedCollectionStats corpusStats = new IndexBackedCollectionStats();
+		corpusStats.setStatSource(index);
+
+		if (scorer.equals("dirichlet")) {
+			queryScorer = new ScorerDirichlet();
+		} else if (scorer.equals("bm25")) {
+			queryScorer = new ScorerBM25();
+		} else if (scorer.equals("smart")) {
+			queryScorer = new ScorerSMART();
+			queryScorer.setParameter(ScorerSMART.PARAM_SMART_SPEC, "lnc.ltc");
+		} else if (scorer.equals("plm")) {
+			ScorerPLM plm = new ScorerPLM();
+			plm.setIndex(index);
+			queryScorer = plm;
+		} else {
+			throw new IllegalArgumentException("Unknown scorer " + scorer);
+		}
+		queryScorer.setCollectionStats(corpusStats);
+		queryScorer.init();
+		queryScorer.setQuery(TrecTestIndex.query(QUERY));
+	}
+
+	@Benchmark
+	public double scoreHits() {
+		double sum = 0;
+		for (SearchHit hit : hits.hits()) {
+			sum += queryScorer.score(hit);
+		}
+		return sum;
+	}
+}
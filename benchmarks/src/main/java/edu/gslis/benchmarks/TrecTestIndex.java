@@ -0,0 +1,101 @@
+package edu.gslis.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperLuceneImpl;
+import edu.gslis.lucene.main.LuceneBuildIndex;
+import edu.gslis.lucene.main.config.IndexConfig;
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+
+/**
+ * A Lucene index of testdata/trectest (1047 FT documents), built once per benchmark JVM in a
+ * temporary directory and deleted on exit.  The testdata directory is -Dtrectest.dir, by default
+ * ../testdata or testdata, whichever exists.
+ */
+public class TrecTestIndex {
+	/** Matches nearly every document, so a run is as long as the collection. */
+	public static final String BROAD_QUERY = "the of and to in said market company year";
+	public static final String QUERY = "raf cranwell";
+	public static final int NUM_HITS = 1000;
+
+	private static IndexWrapper index;
+
+	public static synchronized IndexWrapper get() throws IOException {
+		if (index == null) {
+			File indexDir = Files.createTempDirectory("trectest.lucene").toFile();
+			build(testdataDir(), indexDir);
+			index = new IndexWrapperLuceneImpl(indexDir.getAbsolutePath());
+			final File toDelete = indexDir;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					FileUtils.deleteQuietly(toDelete);
+				}
+			});
+		}
+		return index;
+	}
+
+	private static File testdataDir() {
+		String dir = System.getProperty("trectest.dir");
+		if (dir != null)
+			return new File(dir);
+		File parent = new File("../testdata");
+		return parent.exists() ? parent : new File("testdata");
+	}
+
+	private static void build(File testdata, File indexDir) throws IOException {
+		Yaml yaml = new Yaml(new Constructor(IndexConfig.class));
+		FileInputStream in = new FileInputStream(new File(testdata, "build_index_trectest.yml"));
+		IndexConfig config = (IndexConfig)yaml.load(in);
+		in.close();
+		config.setIndexPath(indexDir.getAbsolutePath());
+		config.getCorpus().setPath(new File(testdata, "trectest").getAbsolutePath());
+		try {
+			new LuceneBuildIndex(config).buildIndex();
+		} catch (Exception e) {
+			throw new IOException("Unable to index " + testdata, e);
+		}
+	}
+
+	public static GQuery query(String text) {
+		GQuery query = new GQuery();
+		query.setTitle("1");
+		query.setText(text);
+		query.setFeatureVector(new FeatureVector(text, null));
+		return query;
+	}
+
+	/**
+	 * @return the top NUM_HITS hits for BROAD_QUERY, each with its document vector
+	 */
+	public static SearchHits hydratedHits(IndexWrapper index, Stopper stopper) {
+		SearchHits hits = index.runQuery(query(BROAD_QUERY), NUM_HITS);
+		for (SearchHit hit : hits.hits()) {
+			hit.setFeatureVector(index.getDocVector(hit.getDocID(), stopper));
+			hit.setLength(hit.getFeatureVector().getLength());
+		}
+		return hits;
+	}
+
+	public static List<String> docnos(SearchHits hits) {
+		List<String> docnos = new ArrayList<String>(hits.size());
+		for (SearchHit hit : hits.hits()) {
+			docnos.add(hit.getDocno());
+		}
+		return docnos;
+	}
+}
@@ -0,0 +1,59 @@
+package edu.gslis.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Building a FeatureVector from text (analysis, stopping and counting), one document per call.
+ * The texts are collection documents rebuilt from their indexed terms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+	public static final int NUM_TEXTS = 100;
+
+	private List<String> texts = new ArrayList<String>();
+	private Stopper stopper = new Stopper();
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		IndexWrapper index = TrecTestIndex.get();
+		SearchHits hits = index.runQuery(TrecTestIndex.query(TrecTestIndex.BROAD_QUERY), NUM_TEXTS);
+		for (int i = 0; i < hits.size(); i++) {
+			StringBuilder text = new StringBuilder();
+			for (String term : index.getDocTerms(hits.getHit(i).getDocID())) {
+				text.append(term).append(' ');
+			}
+			texts.add(text.toString());
+		}
+	}
+
+	@Benchmark
+	public FeatureVector fromText() {
+		if (++next == texts.size())
+			next = 0;
+		return new FeatureVector(texts.get(next), stopper);
+	}
+}
@@ -0,0 +1,38 @@
+package edu.gslis.demo;
+
+import edu.gslis.docscoring.support.DocumentStatsBuilder;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Writes a DocumentStatsFile for an Indri index (Lucene indexes get one from LuceneBuildIndex).
+ * 
+ * Usage: BuildDocumentStats index output [lnc,ltc,...] [stoplist]
+ * 
+ * The optional third argument lists SMART document weightings to store norms for.  The fourth
+ * is the stoplist runs hydrate documents with; runners only use stats built with the same one.
+ * RunScorer and the pipeline's rescore stage look for the file as docstats in the index.
+ */
+public class BuildDocumentStats {
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("usage: BuildDocumentStats index output [docSpec,...] [stoplist]");
+			System.exit(-1);
+		}
+		
+		IndexWrapperIndriImpl index = new IndexWrapperIndriImpl(args[0]);
+		try {
+			DocumentStatsBuilder builder = new DocumentStatsBuilder(index);
+			if(args.length > 2) {
+				for(String spec : args[2].split(","))
+					builder.addDocSpec(spec.trim());
+			}
+			if(args.length > 3)
+				builder.setStopper(new Stopper(args[3]));
+			// Indri docIDs run from 1 to the document count
+			builder.build(args[1], 1, (int)index.docCount() + 1);
+		} finally {
+			index.close();
+		}
+	}
+}
@@ -77,6 +77,9 @@ public class RunBM25 {
 		if(params.getParamValue(ParameterBroker.STOPPER_PARAM) != null)
 			stopper = new Stopper(params.getParamValue(ParameterBroker.STOPPER_PARAM));
 		
+		int accumulatorThreads = 1;
+		if(params.getParamValue("accumulator-threads") != null)
+			accumulatorThreads = Integer.parseInt(params.getParamValue("accumulator-threads"));
 	
 		
 		
@@ -140,6 +143,7 @@ public class RunBM25 {
 			
 			ResultAccumulator accumulator = new ResultAccumulator((IndexWrapperIndriImpl)index, 
 					query.getFeatureVector(), "the");
+			accumulator.setNumThreads(accumulatorThreads);
 			accumulator.accumulate();
 			List<UnscoredSearchHit> accumulated = accumulator.getChronologicallyOrderedDocs();
 			
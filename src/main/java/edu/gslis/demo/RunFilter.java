@@ -13,10 +13,12 @@ import edu.gslis.docscoring.QueryDocScorer;
 import edu.gslis.docscoring.support.CollectionStats;
 import edu.gslis.eval.Qrels;
 import edu.gslis.filtering.session.FilterSession;
+import edu.gslis.filtering.session.SharedScanFilterSession;
 import edu.gslis.filtering.session.SimpleFilterSessionImpl;
 import edu.gslis.filtering.threshold.SimpleCutoffThresholdClassifier;
 import edu.gslis.filtering.threshold.ThresholdFinder;
 import edu.gslis.filtering.threshold.ThresholdFinderParamSweep;
+import edu.gslis.filtering.threshold.ThresholdObjectives;
 import edu.gslis.indexes.IndexWrapper;
 import edu.gslis.indexes.IndexWrapperIndriImpl;
 import edu.gslis.output.FormattedOutputTrecEval;
@@ -24,6 +26,7 @@ import edu.gslis.queries.GQueries;
 import edu.gslis.queries.GQueriesJsonImpl;
 import edu.gslis.queries.GQuery;
 import edu.gslis.searchhits.SearchHits;
+import edu.gslis.searchhits.SearchHitsBatch;
 import edu.gslis.textrepresentation.FeatureVector;
 import edu.gslis.utils.ParameterBroker;
 import edu.gslis.utils.Stopper;
@@ -37,6 +40,7 @@ import edu.gslis.utils.Stopper;
  */
 
 public class RunFilter {
+	public static final String SHARED_SCAN_MODE = "shared-scan";
 	
 	public static void main(String[] args) throws ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException, NoSuchFieldException {
 		File paramFile = new File(args[0]);
@@ -96,30 +100,21 @@ public class RunFilter {
 		String scorerType = "edu.gslis.docscoring.ScorerDirichlet";
 		if(params.getParamValue("scorer-name") != null)
 			scorerType = params.getParamValue("scorer-name");
-		QueryDocScorer docScorer = (QueryDocScorer)loader.loadClass(scorerType).newInstance();
-		docScorer.setCollectionStats(corpusStats);
-		docScorer.init();
-		
-		Iterator<String> parameterIt = params.getAllParams().keySet().iterator();
-		while(parameterIt.hasNext()) {
-			String paramName = parameterIt.next();
-			if(! paramName.startsWith("scorer-param-"))
-				continue;
-			String paramValue = params.getParamValue(paramName);
-			if (GenericValidator.isDouble(paramValue)) {
-			    double doubleValue = Double.parseDouble(params.getParamValue(paramName));
-		        paramName = paramName.replaceFirst("scorer-param-", "");
-		        docScorer.setParameter(paramName, doubleValue);
-			} else {
-	            paramName = paramName.replaceFirst("scorer-param-", "");
-	            docScorer.setParameter(paramName, paramValue);
-			}
-		}
+		QueryDocScorer docScorer = getScorer(loader, scorerType, params, corpusStats);
 		
 		String optimizerType = "edu.gslis.filtering.threshold.ThresholdFinderParamSweep";
 		if(params.getParamValue("optimizer-name") != null)
 			optimizerType = params.getParamValue("optimizer-name");
 		ThresholdFinder optimizer = (ThresholdFinder)loader.loadClass(optimizerType).newInstance();
+		if(params.getParamValue("optimizer-objective") != null && optimizer instanceof ThresholdFinderParamSweep) {
+			try {
+				((ThresholdFinderParamSweep)optimizer).setObjective(
+						ThresholdObjectives.getObjective(params.getParamValue("optimizer-objective")));
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
 		
 		
 		
@@ -127,6 +122,16 @@ public class RunFilter {
 		Writer outputWriter = new BufferedWriter(new OutputStreamWriter(System.out));
 		FormattedOutputTrecEval output = FormattedOutputTrecEval.getInstance(runId, outputWriter);
 		
+		// shared-scan: train and filter all topics in one pass over each index
+		boolean sharedScan = SHARED_SCAN_MODE.equals(params.getParamValue("filter-mode"));
+		SharedScanFilterSession sharedSession = null;
+		if(sharedScan) {
+			sharedSession = new SharedScanFilterSession((IndexWrapperIndriImpl)trainIndex,
+					(IndexWrapperIndriImpl)testIndex,
+					trainQrels,
+					optimizer);
+		}
+		
 		Iterator<GQuery> queryIterator = queries.iterator();
 		while(queryIterator.hasNext()) {
 			GQuery query = queryIterator.next();
@@ -141,6 +146,14 @@ public class RunFilter {
 			}
 			query.setFeatureVector(surfaceForm);
 			
+			if(sharedScan) {
+				// each topic needs a scorer of its own, since all are live at once
+				QueryDocScorer topicScorer = getScorer(loader, scorerType, params, corpusStats);
+				topicScorer.setQuery(query);
+				sharedSession.addTopic(query, topicScorer);
+				continue;
+			}
+			
 			docScorer.setQuery(query);
 
 			
@@ -157,7 +170,45 @@ public class RunFilter {
 			
 			output.write(results, query.getTitle());
 		}
+		
+		if(sharedScan) {
+			sharedSession.train();
+			SearchHitsBatch results = sharedSession.filter();
+			queryIterator = queries.iterator();
+			while(queryIterator.hasNext()) {
+				GQuery query = queryIterator.next();
+				output.write(results.getSearchHits(query), query.getTitle());
+			}
+		}
 		output.close();
 	}
+	
+	/**
+	 * Builds a scorer from the scorer-param-* parameters.  Parameters are set before init(),
+	 * since some scorers (e.g. ScorerSMART) read them there.
+	 */
+	static QueryDocScorer getScorer(ClassLoader loader, String scorerType, ParameterBroker params,
+			CollectionStats corpusStats) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		QueryDocScorer docScorer = (QueryDocScorer)loader.loadClass(scorerType).newInstance();
+		docScorer.setCollectionStats(corpusStats);
+		
+		Iterator<String> parameterIt = params.getAllParams().keySet().iterator();
+		while(parameterIt.hasNext()) {
+			String paramName = parameterIt.next();
+			if(! paramName.startsWith("scorer-param-"))
+				continue;
+			String paramValue = params.getParamValue(paramName);
+			if (GenericValidator.isDouble(paramValue)) {
+			    double doubleValue = Double.parseDouble(params.getParamValue(paramName));
+		        paramName = paramName.replaceFirst("scorer-param-", "");
+		        docScorer.setParameter(paramName, doubleValue);
+			} else {
+	            paramName = paramName.replaceFirst("scorer-param-", "");
+	            docScorer.setParameter(paramName, paramValue);
+			}
+		}
+		docScorer.init();
+		return docScorer;
+	}
 
 }
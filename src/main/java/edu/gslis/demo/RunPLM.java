@@ -140,6 +140,7 @@ public class RunPLM {
 
 	        // Re-score documents using PLM
 	        plmScorer.setQuery(query);
+	        plmScorer.prefetch(results);
             SearchHits plmResults = new SearchHits();	       
 	        for (int i=0; i < results.size(); i++) {
 	            SearchHit hit = results.getHit(i);
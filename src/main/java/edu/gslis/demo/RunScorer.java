@@ -4,6 +4,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Iterator;
@@ -13,7 +14,9 @@ import org.apache.commons.validator.GenericValidator;
 
 import edu.gslis.docaccumulators.ResultAccumulatorUnconstrained;
 import edu.gslis.docscoring.QueryDocScorer;
+import edu.gslis.docscoring.ScorerSMART;
 import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.docscoring.support.DocumentStatsFile;
 import edu.gslis.filtering.session.FilterSession;
 import edu.gslis.indexes.IndexWrapper;
 import edu.gslis.indexes.IndexWrapperIndriImpl;
@@ -23,6 +26,7 @@ import edu.gslis.queries.GQueriesJsonImpl;
 import edu.gslis.queries.GQuery;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
+import edu.gslis.searchhits.TopKSearchHits;
 import edu.gslis.searchhits.UnscoredSearchHit;
 import edu.gslis.textrepresentation.FeatureVector;
 import edu.gslis.utils.ParameterBroker;
@@ -107,6 +111,21 @@ public class RunScorer {
 		// Perform any optional initialization
 		docScorer.init();
 		
+		// SMART document norms from the index's docstats (or the docstats parameter), if they
+		// were built with this stoplist; accumulated hits only hold the query's terms
+		if (docScorer instanceof ScorerSMART) {
+			String statsPath = params.getParamValue("docstats");
+			if (statsPath == null)
+				statsPath = DocumentStatsFile.pathInIndex(params.getParamValue("index"));
+			if (statsPath != null) {
+				try {
+					((ScorerSMART)docScorer).setDocumentStats(DocumentStatsFile.open(statsPath, index, stopper));
+				} catch (IOException e) {
+					System.err.println("Not using document stats: " + e.getMessage());
+				}
+			}
+		}
+		
 
 		Writer outputWriter;
 		if (outputFile != null)
@@ -140,16 +159,16 @@ public class RunScorer {
 	        Map<Integer, UnscoredSearchHit> accumulated = 
 	                accumulator.getAccumulatedDocs();
 	        
-	        SearchHits results = new SearchHits();
+	        TopKSearchHits top = new TopKSearchHits(1000);
 	        for (UnscoredSearchHit unscoredHit: accumulated.values()) {
 
 	            SearchHit hit = unscoredHit.toSearchHit();
 	            double score = docScorer.score(hit);
 	            hit.setScore(score);  
-	            results.add(hit);
+	            top.offer(hit);
 	        }   
 	            
-	        results.rank();
+	        SearchHits results = top.getSearchHits();
             output.write(results, query.getTitle(), 1000);
         }
         output.close();
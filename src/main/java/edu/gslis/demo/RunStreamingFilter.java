@@ -0,0 +1,147 @@
+package edu.gslis.demo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+import edu.gslis.docscoring.QueryDocScorer;
+import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.docscoring.support.IncrementalCollectionStats;
+import edu.gslis.eval.Qrels;
+import edu.gslis.filtering.session.FilterSession;
+import edu.gslis.filtering.session.SimpleFilterSessionImpl;
+import edu.gslis.filtering.stream.IndriDocumentStream;
+import edu.gslis.filtering.stream.StreamingFilter;
+import edu.gslis.filtering.threshold.AdaptiveThresholdClassifier;
+import edu.gslis.filtering.threshold.ThresholdFinder;
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.output.FormattedEmissionsTrecEval;
+import edu.gslis.queries.GQueries;
+import edu.gslis.queries.GQueriesJsonImpl;
+import edu.gslis.queries.GQuery;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.ParameterBroker;
+import edu.gslis.utils.Stopper;
+
+
+/**
+ * Trains a threshold per topic as RunFilter does, then filters the test index as a
+ * time-ordered stream: every topic sees each test document once, on arrival, with
+ * background statistics that only reflect the documents seen so far.
+ *
+ * Parameters are those of RunFilter plus the optional "test-qrels" (immediate feedback
+ * on emitted documents, which adapts the thresholds) and "reorder-window".
+ */
+public class RunStreamingFilter {
+
+	public static void main(String[] args) throws ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException, NoSuchFieldException {
+		File paramFile = new File(args[0]);
+		if(!paramFile.exists()) {
+			System.err.println("you must specify a parameter file to run against.");
+			System.exit(-1);
+		}
+
+		ParameterBroker params = new ParameterBroker(args[0]);
+
+
+		GQueries        queries    = new GQueriesJsonImpl();
+		queries.setMetadataField(FilterSession.NAME_OF_EMIT_STATUS_FIELD);
+		queries.setMetadataField(FilterSession.NAME_OF_CONSTRAINT_FIELD);
+		queries.read(params.getParamValue(ParameterBroker.QUERY_PATH_PARAM));
+
+		IndexWrapper    trainIndex = new IndexWrapperIndriImpl(params.getParamValue("train-index"));
+		IndexWrapperIndriImpl testIndex = new IndexWrapperIndriImpl(params.getParamValue("test-index"));
+
+		Qrels trainQrels = null;
+		String pathToQrels = params.getParamValue("train-qrels");
+		if(pathToQrels != null) {
+			trainQrels =  new Qrels(pathToQrels, false, 2);
+		}
+		Qrels testQrels = null;
+		if(params.getParamValue("test-qrels") != null) {
+			testQrels = new Qrels(params.getParamValue("test-qrels"), false, 2);
+		}
+
+		String runId = "gslis";
+		if(params.getParamValue("run-name") != null)
+			runId = params.getParamValue("run-name");
+
+		Stopper stopper = null;
+		if(params.getParamValue(ParameterBroker.STOPPER_PARAM) != null)
+			stopper = new Stopper(params.getParamValue(ParameterBroker.STOPPER_PARAM));
+
+
+		ClassLoader loader = ClassLoader.getSystemClassLoader();
+
+		// training statistics, as in RunFilter
+		String corpusStatsClass = "edu.gslis.docscoring.support.IndexBackedCollectionStats";
+		if(params.getParamValue("bg-stat-type") != null)
+			corpusStatsClass = params.getParamValue("bg-stat-type");
+		CollectionStats corpusStats = (CollectionStats)loader.loadClass(corpusStatsClass).newInstance();
+		String corpusStatsPath = params.getParamValue("bg-source-path");
+		if(corpusStatsPath != null)
+			corpusStats.setStatSource(corpusStatsPath);
+
+		// the stream's statistics start where training left off and grow as documents arrive
+		IncrementalCollectionStats streamStats = new IncrementalCollectionStats();
+		streamStats.setPrior(corpusStats);
+
+		String scorerType = "edu.gslis.docscoring.ScorerDirichlet";
+		if(params.getParamValue("scorer-name") != null)
+			scorerType = params.getParamValue("scorer-name");
+
+		String optimizerType = "edu.gslis.filtering.threshold.ThresholdFinderParamSweep";
+		if(params.getParamValue("optimizer-name") != null)
+			optimizerType = params.getParamValue("optimizer-name");
+		ThresholdFinder optimizer = (ThresholdFinder)loader.loadClass(optimizerType).newInstance();
+
+
+		Writer outputWriter = new BufferedWriter(new OutputStreamWriter(System.out));
+		FormattedEmissionsTrecEval output = new FormattedEmissionsTrecEval(runId, outputWriter);
+
+		StreamingFilter filter = new StreamingFilter(streamStats, output);
+		filter.setFeedback(testQrels);
+
+		Iterator<GQuery> queryIterator = queries.iterator();
+		while(queryIterator.hasNext()) {
+			GQuery query = queryIterator.next();
+
+			System.err.println(query.getTitle());
+
+			FeatureVector surfaceForm = new FeatureVector(stopper);
+			Iterator<String> queryTerms = query.getFeatureVector().iterator();
+			while(queryTerms.hasNext()) {
+				String term = queryTerms.next();
+				surfaceForm.addTerm(term, query.getFeatureVector().getFeatureWeight(term));
+			}
+			query.setFeatureVector(surfaceForm);
+
+			QueryDocScorer trainScorer = RunFilter.getScorer(loader, scorerType, params, corpusStats);
+			trainScorer.setQuery(query);
+
+			SimpleFilterSessionImpl trainingSession = new SimpleFilterSessionImpl(query,
+					trainIndex,
+					testIndex,
+					trainQrels,
+					trainScorer,
+					optimizer);
+			trainingSession.train();
+
+			AdaptiveThresholdClassifier thresholder = new AdaptiveThresholdClassifier();
+			thresholder.setThreshold(trainingSession.getThresholdClassifier().getThreshold());
+
+			filter.addTopic(query, RunFilter.getScorer(loader, scorerType, params, streamStats), thresholder);
+		}
+
+		IndriDocumentStream stream = new IndriDocumentStream(testIndex, null);
+		if(params.getParamValue("reorder-window") != null)
+			stream.setReorderWindow(Integer.parseInt(params.getParamValue("reorder-window")));
+		filter.run(stream);
+
+		output.close();
+	}
+
+}
@@ -1,10 +1,10 @@
 package edu.gslis.docaccumulators;
 
-import java.util.Iterator;
 import java.util.Set;
 
 import edu.gslis.eval.Qrels;
 import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
 import edu.gslis.queries.GQuery;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
@@ -16,16 +16,26 @@ public class OracleDocAccumulator {
 		Set<String> docnos = qrels.getRelDocs(query.getTitle());
 		if(docnos == null || docnos.size() == 0) 
 			return relDocs;
-		Iterator<String> docIt = docnos.iterator();
-		while(docIt.hasNext()) {
-			String docno = docIt.next();
-			int docId = index.getDocId(docno);
+		String[] docnoArray = docnos.toArray(new String[docnos.size()]);
+		int[] docIds = null;
+		if(index instanceof IndexWrapperIndriImpl) {
+			// resolve the whole judged set in one round trip
+			docIds = ((IndexWrapperIndriImpl)index).getDocIds(docnoArray);
+		} else {
+			docIds = new int[docnoArray.length];
+			for(int i=0; i<docnoArray.length; i++) {
+				docIds[i] = index.getDocId(docnoArray[i]);
+			}
+		}
+		
+		for(int i=0; i<docnoArray.length; i++) {
+			int docId = docIds[i];
 			if(docId < 1)
 				continue;
 			double score = Double.NEGATIVE_INFINITY;
 			SearchHit doc = new SearchHit();
 			doc.setDocID(docId);
-			doc.setDocno(docno);
+			doc.setDocno(docnoArray[i]);
 			doc.setScore(score);
 			relDocs.add(doc);
 		}
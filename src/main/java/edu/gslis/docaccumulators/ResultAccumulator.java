@@ -7,10 +7,16 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import lemurproject.indri.QueryEnvironment;
 import lemurproject.indri.ScoredExtentResult;
 import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.indexes.QueryEnvironmentPool;
 import edu.gslis.searchhits.UnscoredSearchHit;
 import edu.gslis.textrepresentation.FeatureVector;
 
@@ -18,8 +24,10 @@ public class ResultAccumulator {
 
 	private FeatureVector queryModel;
 	private QueryEnvironment env;
+	private IndexWrapperIndriImpl indexWrapper;
 	private Map<Integer,UnscoredSearchHit> accumulatedFilteredDocs;
 	private String constraint;
+	private int numThreads = 1;
 	
 	// inner class for sorting hits on time
 	private class RealTimeDocChronologicalComparator implements Comparator<UnscoredSearchHit>{
@@ -44,6 +52,7 @@ public class ResultAccumulator {
 		
 		// danger!  assumes we've got an indri index
 		this.env = (QueryEnvironment)indexWrapper.getActualIndex();
+		this.indexWrapper = indexWrapper;
 		this.queryModel = queryModel;
 		this.constraint = constraint;
 		accumulatedFilteredDocs = new HashMap<Integer,UnscoredSearchHit>();
@@ -78,35 +87,18 @@ public class ResultAccumulator {
 			}
 
 			// now iterate over each query term
+			if(numThreads > 1 && queryModel.getFeatureCount() > 1
+					&& indexWrapper.getEnvironmentPool().size() > 1) {
+				accumulateParallel();
+				return;
+			}
 			Iterator<String> featureIterator = queryModel.iterator();
 			while(featureIterator.hasNext()) {
 				String feature = featureIterator.next();
-				
-				
-				String compoundQuery = "#band(" + constraint + " #band(" + feature + "))";
-				
-				
-				ScoredExtentResult[] featureResults = env.expressionList(compoundQuery);
-
-				if(featureResults.length==0)
+				Postings postingsForFeature = postingsForFeature(env, feature);
+				if(postingsForFeature == null)
 					continue;
-				// convert expression list to term-doc counts
-				int[] docIds = this.extractDocIds(featureResults);
-				PostingsAggregator postingsAggregator = new PostingsAggregator();
-				Postings postingsForFeature = postingsAggregator.aggregate(docIds);
-				Iterator<Integer> matchingDocIdIterator = postingsForFeature.docIdIterator();
-				while(matchingDocIdIterator.hasNext()) {
-					int docId = matchingDocIdIterator.next();
-					int count = postingsForFeature.lookup(docId);
-					
-					UnscoredSearchHit hit = accumulatedFilteredDocs.get(docId);
-					if(hit == null) {
-						continue;
-					}
-					
-					hit.addFeature(feature, count);
-					accumulatedFilteredDocs.put(docId, hit);
-				}
+				addPostings(feature, postingsForFeature);
 			}
 
 
@@ -117,6 +109,76 @@ public class ResultAccumulator {
 	}
 
 
+	/**
+	 * Runs the per-feature expression lists concurrently on the wrapper's environment pool.  Each
+	 * worker only builds the Postings for its own feature; the postings are then folded into the 
+	 * hit map by the calling thread, so the hits themselves are never touched concurrently.
+	 */
+	private void accumulateParallel() throws Exception {
+		final QueryEnvironmentPool envs = indexWrapper.getEnvironmentPool();
+		int poolSize = Math.min(Math.min(numThreads, queryModel.getFeatureCount()), envs.size());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		try {
+			List<String> features = new ArrayList<String>(queryModel.getFeatures());
+			List<Future<Postings>> futures = new ArrayList<Future<Postings>>(features.size());
+			for(final String feature : features) {
+				futures.add(executor.submit(new Callable<Postings>() {
+					public Postings call() throws Exception {
+						QueryEnvironment e = envs.checkout();
+						try {
+							return postingsForFeature(e, feature);
+						} finally {
+							envs.release(e);
+						}
+					}
+				}));
+			}
+			
+			for(int i=0; i<features.size(); i++) {
+				Postings postingsForFeature = futures.get(i).get();
+				if(postingsForFeature == null)
+					continue;
+				addPostings(features.get(i), postingsForFeature);
+			}
+		} finally {
+			// outstanding tasks may still hold environments, let them finish before returning
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+	}
+	
+	/**
+	 * convert the constrained expression list for this feature to term-doc counts
+	 * @return postings for the feature, or null if it never matches
+	 */
+	private Postings postingsForFeature(QueryEnvironment e, String feature) throws Exception {
+		String compoundQuery = "#band(" + constraint + " #band(" + feature + "))";
+		
+		ScoredExtentResult[] featureResults = e.expressionList(compoundQuery);
+		if(featureResults.length==0)
+			return null;
+		
+		int[] docIds = this.extractDocIds(featureResults);
+		PostingsAggregator postingsAggregator = new PostingsAggregator();
+		return postingsAggregator.aggregate(docIds);
+	}
+	
+	private void addPostings(String feature, Postings postingsForFeature) {
+		Iterator<Integer> matchingDocIdIterator = postingsForFeature.docIdIterator();
+		while(matchingDocIdIterator.hasNext()) {
+			int docId = matchingDocIdIterator.next();
+			int count = postingsForFeature.lookup(docId);
+			
+			UnscoredSearchHit hit = accumulatedFilteredDocs.get(docId);
+			if(hit == null) {
+				continue;
+			}
+			
+			hit.addFeature(feature, count);
+		}
+	}
+
 	private int[] extractDocIds(ScoredExtentResult[] r) {
 		int[] d = new int[r.length];
 		for(int i=0; i<r.length; i++) {
@@ -125,6 +187,16 @@ public class ResultAccumulator {
 		return d;
 	}
 
+	/**
+	 * Number of QueryEnvironments to run per-feature expression lists on concurrently, taken
+	 * from the wrapper's environment pool and capped at its size.  The default of 1, or a
+	 * wrapper opened without a pool, runs everything serially on the wrapper's own environment.
+	 * @param numThreads number of worker threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
 	public Map<Integer,UnscoredSearchHit> getAccumulatedDocs() {
 		return accumulatedFilteredDocs;
 	}
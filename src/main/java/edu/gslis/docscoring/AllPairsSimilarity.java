@@ -0,0 +1,304 @@
+package edu.gslis.docscoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.textrepresentation.SparseVector;
+import edu.gslis.textrepresentation.Vocabulary;
+
+/**
+ * Cosine similarity of every pair among a set of documents, typically the top hits of a run,
+ * keeping pairs at or above a threshold.  Values agree with TextSimilarityMeasure.cosine.
+ *
+ * This is the all-pairs algorithm of Bayardo, Ma and Srikant (2007).  Term ids are assigned in
+ * decreasing order of document frequency among the documents.  Each document's terms are
+ * indexed only from the point where the terms before them (the frequent ones) can no longer
+ * reach the threshold on their own, given each term's largest weight in any document.  A
+ * document then meets only the documents it shares an indexed term with; their prefixes are
+ * added by merging.  With a threshold of 0 every term is indexed.
+ *
+ * Rows are matched against the index on setNumThreads threads.  Each compute call builds its own
+ * index, so an instance may be shared.
+ */
+public class AllPairsSimilarity {
+	private double threshold = 0.0;
+	private int numThreads = 1;
+
+	// the normalized documents and their index, built by each compute call
+	private static class Index {
+		int[][] ids;
+		double[][] weights;
+		int[] prefixLength;
+		int[][] postings;
+		double[][] postingWeights;
+	}
+
+	/**
+	 * @param threshold smallest cosine to keep; pairs below it are not stored
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @return similarities of the hits' feature vectors, indexed by position in hits
+	 */
+	public SimilarityMatrix compute(SearchHits hits) throws Exception {
+		List<FeatureVector> vectors = new ArrayList<FeatureVector>(hits.size());
+		Iterator<SearchHit> it = hits.iterator();
+		while(it.hasNext()) {
+			vectors.add(it.next().getFeatureVector());
+		}
+		return compute(vectors);
+	}
+
+	public SimilarityMatrix compute(List<FeatureVector> vectors) throws Exception {
+		final int n = vectors.size();
+		final Index index = prepare(vectors);
+
+		// pairs (i, j) with j < i, found from row i
+		final int[][] lowerColumns = new int[n][];
+		final double[][] lowerValues = new double[n][];
+		int threads = Math.max(1, Math.min(numThreads, n));
+		final int blockSize = (n + threads - 1) / threads;
+		if(threads == 1) {
+			matchRows(index, 0, n, lowerColumns, lowerValues);
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Object>> futures = new ArrayList<Future<Object>>();
+				for(int start=0; start<n; start+=blockSize) {
+					final int from = start;
+					final int to = Math.min(n, start + blockSize);
+					futures.add(executor.submit(new Callable<Object>() {
+						public Object call() throws Exception {
+							matchRows(index, from, to, lowerColumns, lowerValues);
+							return null;
+						}
+					}));
+				}
+				for(Future<Object> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			}
+		}
+
+		return symmetrize(lowerColumns, lowerValues);
+	}
+
+	/**
+	 * Unit-normalizes the vectors over frequency-ordered term ids and builds the index.
+	 */
+	private Index prepare(List<FeatureVector> vectors) {
+		int n = vectors.size();
+
+		final Map<String,Integer> docFreqs = new HashMap<String,Integer>();
+		for(FeatureVector fv : vectors) {
+			Iterator<String> it = fv.iterator();
+			while(it.hasNext()) {
+				String term = it.next();
+				Integer df = docFreqs.get(term);
+				docFreqs.put(term, (df == null) ? 1 : df + 1);
+			}
+		}
+		List<String> terms = new ArrayList<String>(docFreqs.keySet());
+		Collections.sort(terms, new Comparator<String>() {
+			public int compare(String x, String y) {
+				int c = docFreqs.get(y).compareTo(docFreqs.get(x));
+				return (c != 0) ? c : x.compareTo(y);
+			}
+		});
+		Vocabulary vocabulary = new Vocabulary();
+		for(String term : terms) {
+			vocabulary.getId(term);
+		}
+
+		int numTerms = terms.size();
+		int[][] ids = new int[n][];
+		double[][] weights = new double[n][];
+		double[] maxWeight = new double[numTerms];
+		for(int i=0; i<n; i++) {
+			SparseVector sv = new SparseVector(vectors.get(i), vocabulary);
+			int size = 0;
+			ids[i] = new int[sv.size()];
+			weights[i] = new double[sv.size()];
+			for(int k=0; k<sv.size(); k++) {
+				double w = sv.getWeight(k) / sv.getNorm();
+				if(Double.isInfinite(w) || Double.isNaN(w) || w == 0.0)
+					continue;
+				ids[i][size] = sv.getId(k);
+				weights[i][size] = w;
+				size++;
+				if(w > maxWeight[sv.getId(k)])
+					maxWeight[sv.getId(k)] = w;
+			}
+			ids[i] = Arrays.copyOf(ids[i], size);
+			weights[i] = Arrays.copyOf(weights[i], size);
+		}
+
+		// index each document from where its prefix could reach the threshold
+		int[] prefixLength = new int[n];
+		int[] postingCounts = new int[numTerms];
+		for(int i=0; i<n; i++) {
+			double bound = 0.0;
+			int k = 0;
+			while(k < ids[i].length) {
+				double next = bound + weights[i][k] * maxWeight[ids[i][k]];
+				if(next >= threshold)
+					break;
+				bound = next;
+				k++;
+			}
+			prefixLength[i] = k;
+			for(; k<ids[i].length; k++) {
+				postingCounts[ids[i][k]]++;
+			}
+		}
+		int[][] postings = new int[numTerms][];
+		double[][] postingWeights = new double[numTerms][];
+		for(int t=0; t<numTerms; t++) {
+			postings[t] = new int[postingCounts[t]];
+			postingWeights[t] = new double[postingCounts[t]];
+			postingCounts[t] = 0;
+		}
+		for(int i=0; i<n; i++) {
+			for(int k=prefixLength[i]; k<ids[i].length; k++) {
+				int t = ids[i][k];
+				postings[t][postingCounts[t]] = i;
+				postingWeights[t][postingCounts[t]] = weights[i][k];
+				postingCounts[t]++;
+			}
+		}
+
+		Index index = new Index();
+		index.ids = ids;
+		index.weights = weights;
+		index.prefixLength = prefixLength;
+		index.postings = postings;
+		index.postingWeights = postingWeights;
+		return index;
+	}
+
+	/**
+	 * For each row i in [from, to), finds the documents j < i at or above the threshold.
+	 */
+	private void matchRows(Index index, int from, int to, int[][] lowerColumns, double[][] lowerValues) {
+		int[][] ids = index.ids;
+		double[][] weights = index.weights;
+		int[][] postings = index.postings;
+		double[][] postingWeights = index.postingWeights;
+		double[] scores = new double[to];
+		boolean[] seen = new boolean[to];
+		int[] candidates = new int[to];
+
+		for(int i=from; i<to; i++) {
+			int numCandidates = 0;
+			for(int k=0; k<ids[i].length; k++) {
+				int t = ids[i][k];
+				int[] docs = postings[t];
+				for(int p=0; p<docs.length; p++) {
+					int j = docs[p];
+					// postings are in document order
+					if(j >= i)
+						break;
+					if(!seen[j]) {
+						seen[j] = true;
+						candidates[numCandidates++] = j;
+					}
+					scores[j] += weights[i][k] * postingWeights[t][p];
+				}
+			}
+
+			Arrays.sort(candidates, 0, numCandidates);
+			int[] columns = new int[numCandidates];
+			double[] values = new double[numCandidates];
+			int kept = 0;
+			for(int c=0; c<numCandidates; c++) {
+				int j = candidates[c];
+				double score = scores[j] + prefixDot(index, j, i);
+				scores[j] = 0.0;
+				seen[j] = false;
+				if(score >= threshold && score > 0.0) {
+					columns[kept] = j;
+					values[kept] = score;
+					kept++;
+				}
+			}
+			lowerColumns[i] = Arrays.copyOf(columns, kept);
+			lowerValues[i] = Arrays.copyOf(values, kept);
+		}
+	}
+
+	/**
+	 * @return dot product of document j's unindexed prefix with document i
+	 */
+	private static double prefixDot(Index index, int j, int i) {
+		int[][] ids = index.ids;
+		double[][] weights = index.weights;
+		double dot = 0.0;
+		int a = 0;
+		int b = 0;
+		int aEnd = index.prefixLength[j];
+		while(a < aEnd && b < ids[i].length) {
+			if(ids[j][a] < ids[i][b]) {
+				a++;
+			} else if(ids[j][a] > ids[i][b]) {
+				b++;
+			} else {
+				dot += weights[j][a++] * weights[i][b++];
+			}
+		}
+		return dot;
+	}
+
+	private static SimilarityMatrix symmetrize(int[][] lowerColumns, double[][] lowerValues) {
+		int n = lowerColumns.length;
+		int[] counts = new int[n];
+		for(int i=0; i<n; i++) {
+			counts[i] += lowerColumns[i].length;
+			for(int j : lowerColumns[i]) {
+				counts[j]++;
+			}
+		}
+		int[][] columns = new int[n][];
+		double[][] values = new double[n][];
+		for(int i=0; i<n; i++) {
+			columns[i] = new int[counts[i]];
+			values[i] = new double[counts[i]];
+			counts[i] = 0;
+		}
+		// row i gets its lower entries while i is current, then its upper ones in order
+		for(int i=0; i<n; i++) {
+			for(int c=0; c<lowerColumns[i].length; c++) {
+				int j = lowerColumns[i][c];
+				double value = lowerValues[i][c];
+				columns[i][counts[i]] = j;
+				values[i][counts[i]++] = value;
+				columns[j][counts[j]] = i;
+				values[j][counts[j]++] = value;
+			}
+		}
+		return new SimilarityMatrix(columns, values);
+	}
+}
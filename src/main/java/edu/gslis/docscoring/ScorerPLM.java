@@ -1,16 +1,20 @@
 package edu.gslis.docscoring;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.special.Erf;
+import org.apache.commons.math3.util.FastMath;
 
 import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
 import edu.gslis.queries.GQuery;
 import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
 import edu.gslis.textrepresentation.FeatureVector;
 
 /**
@@ -18,19 +22,47 @@ import edu.gslis.textrepresentation.FeatureVector;
  * 
  * Position language model
  * @author cwillis
+ * 
+ * Each document is reduced to the positions of query terms.  Kernel values, collection
+ * probabilities and normal CDF values for passage lengths are computed once per query (or
+ * sigma), and only occurrences within kernelSigmas of a center are visited.
  */
 public class ScorerPLM extends QueryDocScorer {
 
+    private static final double SQRT2 = FastMath.sqrt(2.0);
        
     double sigma = 50;
     double mu = 2500;
+    double kernelSigmas = 40;
     
     IndexWrapper index;
     
+    // per query
+    private GQuery preparedQuery;
+    private double preparedSigma = Double.NaN;
+    private String[] queryTerms;
+    private double[] queryWeights;
+    private double[] collectionProbs;
+    private Map<String, Integer> queryIndex;
+    private double[] kernel;
+    private double[] cdfAbove = new double[0];
+    private double[] cdfBelow = new double[0];
+    private Map<Integer, QueryPositions> prefetched = new HashMap<Integer, QueryPositions>();
+    
     public void setIndex(IndexWrapper index) {
         this.index = index;
     }
     
+    /**
+     * Drops the per-query cache and any prefetched positions, even for the same GQuery, since
+     * its vector may have been changed in place (e.g. by expansion or applyStopper).
+     */
+    public void setQuery(GQuery query) {
+        super.setQuery(query);
+        this.preparedQuery = null;
+        prefetched.clear();
+    }
+
     public void setMu(double mu) {
         this.mu = mu;
     }
@@ -39,6 +71,17 @@ public class ScorerPLM extends QueryDocScorer {
         this.sigma = sigma;
     }
     
+    /**
+     * @param kernelSigmas ignore query term occurrences farther than this many sigmas from a
+     * center, and treat the normal CDF as 0 or 1 there when computing passage lengths.  The
+     * default, 40, is where NormalDistribution itself does so.
+     */
+    public void setKernelSigmas(double kernelSigmas) {
+        this.kernelSigmas = kernelSigmas;
+        this.preparedQuery = null;
+        this.preparedSigma = Double.NaN;
+    }
+    
     public double getPassageLength(int pos, double docLen, double sigma)
     {
         NormalDistribution dnorm = new NormalDistribution(pos, sigma);
@@ -53,23 +96,6 @@ public class ScorerPLM extends QueryDocScorer {
         return Math.exp( - distance * distance / 2);
     }
     
-    private double kl(GQuery query, FeatureVector dlm, double docLen) 
-    {
-        
-        Iterator<String> queryIterator = gQuery.getFeatureVector().iterator();
-        double ll = 0;
-        while(queryIterator.hasNext()) {
-            String feature = queryIterator.next();
-            double docFreq = dlm.getFeatureWeight(feature);
-            double cpr = index.termFreq(feature) / index.termCount();            
-            double pr = (docFreq + mu * cpr) / (docLen + mu);
-            double qw = gQuery.getFeatureVector().getFeatureWeight(feature);
-            if (pr > 0)
-                ll += qw * Math.log(pr);
-        }
-        return ll;
-    }
-    
     public String getPassage(int center, List<String> docTerms, double len) {
         StringBuffer passage = new StringBuffer();
         int start = 0, end = docTerms.size();
@@ -88,56 +114,170 @@ public class ScorerPLM extends QueryDocScorer {
 
 
 
+    /**
+     * Loads the query-term positions of many hits at once, with a single documentVectors call
+     * when the index is Indri.  Call after setQuery; the cache is dropped on the next setQuery.
+     */
+    public void prefetch(SearchHits hits) {
+        if (!(index instanceof IndexWrapperIndriImpl))
+            return;
+        prepareQuery();
+        int[] docIDs = new int[hits.size()];
+        int k = 0;
+        Iterator<SearchHit> it = hits.iterator();
+        while (it.hasNext())
+            docIDs[k++] = it.next().getDocID();
+        List<List<String>> docs = ((IndexWrapperIndriImpl)index).getDocTerms(docIDs);
+        if (docs.size() != docIDs.length)
+            return;
+        for (int i = 0; i < docIDs.length; i++)
+            prefetched.put(docIDs[i], new QueryPositions(docs.get(i)));
+    }
+
     public double score(SearchHit doc) 
     {      
         double score = -10000;
-        
-        // Ordered list of terms in this document
-        List<String> docTerms = index.getDocTerms(doc.getDocID());
-
-        // Map to store the query terms and positions
-        Map<Integer, String> qposMap = new TreeMap<Integer, String>();
+        prepareQuery();
 
-        // Set of query terms
-        Set<String> qterms = gQuery.getFeatureVector().getFeatures();
-
-        // First pass: get position of query terms
-        for (int i=0; i< docTerms.size(); i++)
-        {
-            String term = docTerms.get(i);
-            if (qterms.contains(term)) {
-                qposMap.put(i, term);
-            }
-        }
+        QueryPositions qpos = prefetched.remove(doc.getDocID());
+        if (qpos == null)
+            qpos = new QueryPositions(index.getDocTerms(doc.getDocID()));
         
-        FeatureVector plm = new FeatureVector(null);
-        int docLen = docTerms.size();
+        // Propagated counts per query term.  As before, these accumulate over successive
+        // centers rather than restarting at each one.
+        double[] plm = new double[queryTerms.length];
+        int docLen = qpos.docLen;
+        int width = kernel.length - 1;
+        int windowStart = 0;
         
         // Only score positions where query terms occur
-        for (int i: qposMap.keySet()) {
-            double psgLen = getPassageLength(i, docLen, sigma);
+        for (int c = 0; c < qpos.positions.length; c++) {
+            int i = qpos.positions[c];
+            double psgLen = passageLength(i, docLen);
             
-            for (int j: qposMap.keySet()) {
+            while (qpos.positions[windowStart] < i - width)
+                windowStart++;
+            for (int p = windowStart; p < qpos.positions.length && qpos.positions[p] <= i + width; p++) {
+                int j = qpos.positions[p];
                 if (j == i) continue;
                 
-                String term = qposMap.get(j);
-                
-                double distance = Math.abs(j - i) / sigma;
-                double pr =  Math.exp( - distance * distance / 2) / psgLen;
+                double pr = kernel[Math.abs(j - i)] / psgLen;
                 if (pr > 0) {
-                    plm.addTerm(term, pr);
+                    plm[qpos.terms[p]] += pr;
                 }
             }            
             // KL score for the passage centerd on term i
-            double plmScore = kl(gQuery, plm, psgLen);
-            
-            //String passage = getPassage(i, docTerms, psgLen);
+            double plmScore = kl(plm, psgLen);
             
             if (plmScore > score) {
-                //System.out.println(doc.getDocno() + "," + plmScore + ", " + passage);
                 score = plmScore;
             }
         }
         return score;       
     }
+
+    private double kl(double[] plm, double docLen) 
+    {
+        double ll = 0;
+        for (int t = 0; t < queryTerms.length; t++) {
+            double pr = (plm[t] + mu * collectionProbs[t]) / (docLen + mu);
+            if (pr > 0)
+                ll += queryWeights[t] * Math.log(pr);
+        }
+        return ll;
+    }
+
+    /**
+     * Caches the query's terms, weights and collection probabilities, and the kernel.
+     */
+    private void prepareQuery() {
+        if (preparedQuery == gQuery && preparedSigma == sigma)
+            return;
+        FeatureVector qv = gQuery.getFeatureVector();
+        queryTerms = new String[qv.getFeatureCount()];
+        queryWeights = new double[queryTerms.length];
+        collectionProbs = new double[queryTerms.length];
+        queryIndex = new HashMap<String, Integer>();
+        Iterator<String> queryIterator = qv.iterator();
+        int t = 0;
+        while (queryIterator.hasNext()) {
+            String feature = queryIterator.next();
+            queryTerms[t] = feature;
+            queryWeights[t] = qv.getFeatureWeight(feature);
+            collectionProbs[t] = index.termFreq(feature) / index.termCount();
+            queryIndex.put(feature, t);
+            t++;
+        }
+        
+        int width = (int)Math.ceil(kernelSigmas * sigma);
+        kernel = new double[width + 1];
+        for (int d = 0; d <= width; d++) {
+            double distance = d / sigma;
+            kernel[d] = Math.exp( - distance * distance / 2);
+        }
+        if (preparedSigma != sigma) {
+            cdfAbove = new double[0];
+            cdfBelow = new double[0];
+        }
+        prefetched.clear();
+        preparedQuery = gQuery;
+        preparedSigma = sigma;
+    }
+
+    /**
+     * Same value as getPassageLength(pos, docLen, sigma) at the default kernelSigmas, from
+     * cached normal CDF values.
+     */
+    private double passageLength(int pos, int docLen) {
+        if (docLen - pos >= cdfAbove.length)
+            cdfAbove = extend(cdfAbove, docLen - pos, 1);
+        if (pos >= cdfBelow.length)
+            cdfBelow = extend(cdfBelow, pos, -1);
+        return Math.sqrt(2 * Math.PI) * sigma * (cdfAbove[docLen - pos] - cdfBelow[pos]);
+    }
+
+    // cdf[k] = P(X <= mean + sign * k) for X ~ N(mean, sigma), cut off at kernelSigmas
+    private double[] extend(double[] cdf, int needed, int sign) {
+        double[] extended = Arrays.copyOf(cdf, Math.max(needed + 1, cdf.length * 2));
+        for (int k = cdf.length; k < extended.length; k++) {
+            double dev = sign * (double)k;
+            if (Math.abs(dev) > kernelSigmas * sigma)
+                extended[k] = (dev < 0) ? 0.0 : 1.0;
+            else
+                extended[k] = 0.5 * (1 + Erf.erf(dev / (sigma * SQRT2)));
+        }
+        return extended;
+    }
+
+    /**
+     * Positions of query terms in one document, ascending, with the query term at each.
+     */
+    private class QueryPositions {
+        int docLen;
+        int[] positions;
+        int[] terms;
+
+        QueryPositions(List<String> docTerms) {
+            docLen = docTerms.size();
+            positions = new int[16];
+            terms = new int[16];
+            int n = 0;
+            int pos = 0;
+            for (String term : docTerms) {
+                Integer t = queryIndex.get(term);
+                if (t != null) {
+                    if (n == positions.length) {
+                        positions = Arrays.copyOf(positions, n * 2);
+                        terms = Arrays.copyOf(terms, n * 2);
+                    }
+                    positions[n] = pos;
+                    terms[n] = t;
+                    n++;
+                }
+                pos++;
+            }
+            positions = Arrays.copyOf(positions, n);
+            terms = Arrays.copyOf(terms, n);
+        }
+    }
 }
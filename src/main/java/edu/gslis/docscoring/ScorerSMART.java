@@ -2,6 +2,8 @@ package edu.gslis.docscoring;
 
 import java.util.Iterator;
 
+import edu.gslis.docscoring.smart.DocumentNorm;
+import edu.gslis.docscoring.smart.DocumentNormCache;
 import edu.gslis.docscoring.smart.IDFWeights;
 import edu.gslis.docscoring.smart.IDFWeights.IDFWeight;
 import edu.gslis.docscoring.smart.Normalizers;
@@ -9,6 +11,7 @@ import edu.gslis.docscoring.smart.Normalizers.Normalizer;
 import edu.gslis.docscoring.smart.TFWeights;
 import edu.gslis.docscoring.smart.TFWeights.TFWeight;
 import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.docscoring.support.DocumentStatsFile;
 import edu.gslis.docscoring.support.IndexBackedCollectionStats;
 import edu.gslis.indexes.IndexWrapper;
 import edu.gslis.indexes.IndexWrapperIndriImpl;
@@ -94,6 +97,11 @@ public class ScorerSMART extends QueryDocScorer
 
     String smartSpec = "lnc.ltc";
     
+    DocumentNormCache documentNorms = null;
+    DocumentStatsFile documentStats = null;
+    String documentStatsColumn = null;
+    IndexWrapper index = null;
+    
 
     /**
      * Instantiates weights and normalizers based on the
@@ -124,6 +132,7 @@ public class ScorerSMART extends QueryDocScorer
             queryNormalizer.setAvgDocLen(avgDocLen); 
             queryNormalizer.setAvgUniqueTerms(avgUniqueTerms);
             
+            setDocumentStatsColumn();
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -155,6 +164,13 @@ public class ScorerSMART extends QueryDocScorer
      * Given a document, for each query term,
      * calculate the document and query weight
      * and normalize
+     * 
+     * The hit's feature vector is left unchanged.  By default the document's norm is computed
+     * from that vector, so every term of every hit is weighted on each call.  Only with a
+     * DocumentNormCache and an index set is the norm of the full document vector in the index
+     * taken from the cache, or computed and cached, so that once it is known only the query's
+     * terms are weighted; hits must then carry full, unstopped document vectors.  Hits without
+     * a docID (0) are not cached.
      */
     public double score(SearchHit doc) 
     {
@@ -166,15 +182,16 @@ public class ScorerSMART extends QueryDocScorer
             
             // Note: query vector weights handled during init()
             
-            docTF.weight(dfv);
-            docIDF.weight(dfv);
-            docNormalizer.normalize(dfv);
+            DocumentNorm norm = documentNorm(doc.getDocID(), dfv);
             
             Iterator<String> queryIterator = qfv.iterator();        
             while(queryIterator.hasNext()) {
                 String feature = queryIterator.next();
+                double tf = dfv.getFeatureWeight(feature);
+                if (tf == 0)
+                    continue;
                 double wt_q = qfv.getFeatureWeight(feature);
-                double wft_d = dfv.getFeatureWeight(feature); 
+                double wft_d = norm.weight(feature, tf, docTF, docIDF); 
                 score += wft_d * wt_q;
             }
 
@@ -186,6 +203,25 @@ public class ScorerSMART extends QueryDocScorer
     }
     
 
+    private DocumentNorm documentNorm(int docID, FeatureVector dfv) throws Exception {
+        // rows of documents the stats builder found empty are left 0
+        if (documentStatsColumn != null && documentStats.contains(docID) 
+                && documentStats.get(documentStatsColumn, docID) != 0)
+            return new DocumentNorm(documentStats.get(DocumentStatsFile.MAX_TF, docID), 
+                    documentStats.get(DocumentStatsFile.AVG_TF, docID), 
+                    documentStats.get(documentStatsColumn, docID));
+        if (documentNorms == null || index == null || docID <= 0)
+            return DocumentNorm.compute(dfv, docTF, docIDF, docNormalizer);
+        
+        // only norms of full document vectors are cached, never those of the hit's own vector
+        DocumentNorm norm = documentNorms.get(index, smartSpec, docID);
+        if (norm == null) {
+            norm = DocumentNorm.compute(index.getDocVector(docID, null), docTF, docIDF, docNormalizer);
+            documentNorms.put(index, smartSpec, docID, norm);
+        }
+        return norm;
+    }
+
     public void setParameter(String paramName, String paramValue) {
         if (paramName.equals(PARAM_SMART_SPEC)) {
             this.smartSpec = paramValue;
@@ -217,6 +253,50 @@ public class ScorerSMART extends QueryDocScorer
         return queryNormalizer;
     }
     
+    /* 
+     * Set/get the document norm cache, e.g. one read from disk or shared between scorers.  
+     * None by default; it is only used once the index the hits come from is set as well.
+     */
+    public void setDocumentNormCache(DocumentNormCache documentNorms) {
+        this.documentNorms = documentNorms;
+    }
+    public DocumentNormCache getDocumentNormCache() {
+        return documentNorms;
+    }
+    
+    /* Set the index the scored hits come from, which cached norms are read from */
+    public void setIndex(IndexWrapper index) {
+        this.index = index;
+    }
+    
+    /* 
+     * Set/get precomputed document statistics.  Used in preference to the cache when they 
+     * include this scorer's document weighting.  Open them with DocumentStatsFile.open(path, 
+     * index, stopper), which checks they were built from the index's analyzer and the stoplist 
+     * the hits are hydrated with; they must also share the scorer's collection statistics.
+     */
+    public void setDocumentStats(DocumentStatsFile documentStats) {
+        this.documentStats = documentStats;
+        setDocumentStatsColumn();
+    }
+    public DocumentStatsFile getDocumentStats() {
+        return documentStats;
+    }
+    
+    // the stats column holding this scorer's document norms, or null if there is none
+    private void setDocumentStatsColumn() {
+        String column = DocumentStatsFile.normColumn(smartSpec.substring(0, 3));
+        if (documentStats != null && documentStats.hasColumn(column)) {
+            documentStatsColumn = column;
+        } else {
+            if (documentStats != null)
+                System.err.println("Document stats have no norms for " + smartSpec.substring(0, 3) 
+                        + " (only " + documentStats.getProperty(DocumentStatsFile.SPECS) 
+                        + "); computing them per hit");
+            documentStatsColumn = null;
+        }
+    }
+    
     /* Set the doc TF weight */
     public void setDocTFWeight(TFWeight weight) {
         this.docTF = weight;
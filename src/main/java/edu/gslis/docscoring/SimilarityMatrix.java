@@ -0,0 +1,62 @@
+package edu.gslis.docscoring;
+
+import java.util.Arrays;
+
+/**
+ * A sparse, symmetric similarity matrix over n items (e.g. the hits of a SearchHits, by rank).
+ * Each row holds its nonzero columns in ascending order with their similarities; the diagonal
+ * is not stored.
+ */
+public class SimilarityMatrix {
+	private static final int[] NO_COLUMNS = new int[0];
+	private static final double[] NO_VALUES = new double[0];
+
+	private int[][] columns;
+	private double[][] values;
+
+	/**
+	 * @param columns per row, ascending column indexes
+	 * @param values per row, similarities parallel to columns
+	 */
+	public SimilarityMatrix(int[][] columns, double[][] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+	public int size() {
+		return columns.length;
+	}
+
+	/**
+	 * @return similarity of items i and j, or 0 if it was not stored
+	 */
+	public double get(int i, int j) {
+		int k = Arrays.binarySearch(columns[i], j);
+		return (k < 0) ? 0.0 : values[i][k];
+	}
+
+	/**
+	 * @return items with a stored similarity to item i, ascending
+	 */
+	public int[] getColumns(int i) {
+		return (columns[i] == null) ? NO_COLUMNS : columns[i];
+	}
+
+	/**
+	 * @return similarities parallel to getColumns(i)
+	 */
+	public double[] getValues(int i) {
+		return (values[i] == null) ? NO_VALUES : values[i];
+	}
+
+	/**
+	 * @return number of stored entries, counting each pair twice
+	 */
+	public int getNumEntries() {
+		int n = 0;
+		for(int i=0; i<columns.length; i++) {
+			n += getColumns(i).length;
+		}
+		return n;
+	}
+}
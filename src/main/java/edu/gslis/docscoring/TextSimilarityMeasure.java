@@ -1,10 +1,9 @@
 package edu.gslis.docscoring;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
 
 import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.textrepresentation.SparseVector;
 
 public class TextSimilarityMeasure {
 
@@ -16,26 +15,37 @@ public class TextSimilarityMeasure {
 	 * @return cosine
 	 */
 	public static double cosine(FeatureVector x, FeatureVector y, boolean needNormalizing) {
-
-		Set<String> vocab = new HashSet<String>();
-		vocab.addAll(x.getFeatures());
-		vocab.addAll(y.getFeatures());
-		
-		if(needNormalizing) {
-			FeatureVector a = x.deepCopy();
-			a.l2Normalize();
-			x = a;
-			FeatureVector b = y.deepCopy();
-			b.l2Normalize();
-			y = b;
+		if(needNormalizing)
+			return cosine(x, x.getVectorNorm(), y, y.getVectorNorm());
+		return cosine(x, 1.0, y, 1.0);
+	}
+	
+	/**
+	 * Cosine of two unnormalized vectors whose L2 norms are already known, e.g. from a 
+	 * DocumentStatsFile.  Neither vector is copied.  Terms in only one vector add nothing, so
+	 * only the smaller vector is walked.
+	 * @param x feature vector
+	 * @param xNorm L2 norm of x
+	 * @param y feature vector
+	 * @param yNorm L2 norm of y
+	 * @return cosine
+	 */
+	public static double cosine(FeatureVector x, double xNorm, FeatureVector y, double yNorm) {
+		if(x.getFeatureCount() > y.getFeatureCount()) {
+			FeatureVector t = x;
+			x = y;
+			y = t;
+			double tNorm = xNorm;
+			xNorm = yNorm;
+			yNorm = tNorm;
 		}
 		
 		double z = 0.0;
-		Iterator<String> terms = vocab.iterator();
+		Iterator<String> terms = x.iterator();
 		while(terms.hasNext()) {
 			String term = terms.next();
-			double xTerm = x.getFeatureWeight(term);
-			double yTerm = y.getFeatureWeight(term);
+			double xTerm = x.getFeatureWeight(term) / xNorm;
+			double yTerm = y.getFeatureWeight(term) / yNorm;
 			
 			if(Double.isInfinite(xTerm) || Double.isNaN(xTerm) || Double.isInfinite(yTerm) || Double.isNaN(yTerm))
 			continue;
@@ -44,4 +54,67 @@ public class TextSimilarityMeasure {
 		}
 		return z;
 	}
+	
+	/**
+	 * Cosine of two sparse vectors from the same Vocabulary, by merging their sorted term ids.
+	 * As above, terms with an infinite or NaN weight are skipped.
+	 * @return cosine
+	 */
+	public static double cosine(SparseVector x, SparseVector y) {
+		double xNorm = x.getNorm();
+		double yNorm = y.getNorm();
+		double z = 0.0;
+		int i = 0;
+		int j = 0;
+		while(i < x.size() && j < y.size()) {
+			int xId = x.getId(i);
+			int yId = y.getId(j);
+			if(xId < yId) {
+				i++;
+			} else if(xId > yId) {
+				j++;
+			} else {
+				double xTerm = x.getWeight(i++) / xNorm;
+				double yTerm = y.getWeight(j++) / yNorm;
+				if(Double.isInfinite(xTerm) || Double.isNaN(xTerm) || Double.isInfinite(yTerm) || Double.isNaN(yTerm))
+					continue;
+				z += xTerm * yTerm;
+			}
+		}
+		return z;
+	}
+	
+	/**
+	 * Cosine of one vector (a query or centroid, say) against many.  x is spread once into a
+	 * dense array indexed by term id, so each of ys costs one pass over its own terms.
+	 * @return cosine of x with each of ys, in order
+	 */
+	public static double[] cosine(SparseVector x, SparseVector[] ys) {
+		double[] dense = new double[x.getMaxId() + 1];
+		double xNorm = x.getNorm();
+		for(int i=0; i<x.size(); i++) {
+			double xTerm = x.getWeight(i) / xNorm;
+			if(Double.isInfinite(xTerm) || Double.isNaN(xTerm))
+				continue;
+			dense[x.getId(i)] = xTerm;
+		}
+		
+		double[] cosines = new double[ys.length];
+		for(int k=0; k<ys.length; k++) {
+			SparseVector y = ys[k];
+			double yNorm = y.getNorm();
+			double z = 0.0;
+			for(int j=0; j<y.size(); j++) {
+				int id = y.getId(j);
+				if(id >= dense.length)
+					break;
+				double yTerm = y.getWeight(j) / yNorm;
+				if(Double.isInfinite(yTerm) || Double.isNaN(yTerm))
+					continue;
+				z += dense[id] * yTerm;
+			}
+			cosines[k] = z;
+		}
+		return cosines;
+	}
 }
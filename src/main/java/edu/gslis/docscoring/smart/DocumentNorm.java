@@ -0,0 +1,78 @@
+package edu.gslis.docscoring.smart;
+
+import java.util.Iterator;
+
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * The per-document quantities SMART document weighting needs beyond a term's own frequency:
+ * the maximum and average term frequency (for the m, a and L TF weights) and the normalizer's
+ * divisor over the TF-IDF weighted vector.  With these, a term's document weight is
+ * 
+ *   idf.weight(term, tf.weight(tf, maxTF, avgTF)) / divisor
+ * 
+ * which equals what weighting and normalizing the whole vector in place would give it.
+ * Instances are immutable.
+ */
+public class DocumentNorm {
+    private final double maxTF;
+    private final double avgTF;
+    private final double divisor;
+    
+    public DocumentNorm(double maxTF, double avgTF, double divisor) {
+        this.maxTF = maxTF;
+        this.avgTF = avgTF;
+        this.divisor = divisor;
+    }
+    
+    /**
+     * Walks the document vector once for TF statistics and once for the divisor.  The vector
+     * is not changed.
+     */
+    public static DocumentNorm compute(FeatureVector dfv, TFWeights.TFWeight tfWeight, 
+            IDFWeights.IDFWeight idfWeight, Normalizers.Normalizer normalizer) throws Exception 
+    {
+        double max = 0.0;
+        double sum = 0.0;
+        Iterator<String> it = dfv.iterator();
+        while (it.hasNext()) {
+            double tf = dfv.getFeatureWeight(it.next());
+            if (tf > max)
+                max = tf;
+            sum += tf;
+        }
+        int n = dfv.getFeatureCount();
+        double avg = sum/(double)n;
+        
+        double[] weights = new double[n];
+        int i = 0;
+        it = dfv.iterator();
+        while (it.hasNext()) {
+            String term = it.next();
+            weights[i++] = idfWeight.weight(term, 
+                    tfWeight.weight(dfv.getFeatureWeight(term), max, avg));
+        }
+        return new DocumentNorm(max, avg, normalizer.divisor(weights, i));
+    }
+    
+    /**
+     * @return the document weight of a term occurring tf times
+     */
+    public double weight(String term, double tf, TFWeights.TFWeight tfWeight, 
+            IDFWeights.IDFWeight idfWeight) throws Exception 
+    {
+        return idfWeight.weight(term, tfWeight.weight(tf, maxTF, avgTF)) / divisor;
+    }
+    
+    public double getMaxTF() {
+        return maxTF;
+    }
+    
+    public double getAvgTF() {
+        return avgTF;
+    }
+    
+    public double getDivisor() {
+        return divisor;
+    }
+}
@@ -0,0 +1,125 @@
+package edu.gslis.docscoring.smart;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.gslis.indexes.IndexWrapper;
+
+/**
+ * DocumentNorms keyed by index, SMART spec and docID, least recently used first out once an
+ * index and spec hold more than maxSize documents.  DocIDs are only unique within an index, so
+ * scorers over different indexes can share a cache.  Norms are those of the full document
+ * vector.  Safe to share between scorers and threads.
+ * 
+ * One index's norms can be written to disk after a pass over the collection and read back
+ * later, so that document norms are computed offline.  The file has one line per document:
+ * 
+ *   spec docID maxTF avgTF divisor
+ */
+public class DocumentNormCache {
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+    
+    private final int maxSize;
+    private Map<IndexWrapper, Map<String, Map<Integer, DocumentNorm>>> norms = 
+            new IdentityHashMap<IndexWrapper, Map<String, Map<Integer, DocumentNorm>>>();
+    
+    public DocumentNormCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+    
+    public DocumentNormCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    public synchronized DocumentNorm get(IndexWrapper index, String spec, int docID) {
+        Map<String, Map<Integer, DocumentNorm>> indexNorms = norms.get(index);
+        Map<Integer, DocumentNorm> specNorms = (indexNorms == null) ? null : indexNorms.get(spec);
+        return (specNorms == null) ? null : specNorms.get(docID);
+    }
+    
+    public synchronized void put(IndexWrapper index, String spec, int docID, DocumentNorm norm) {
+        Map<String, Map<Integer, DocumentNorm>> indexNorms = norms.get(index);
+        if (indexNorms == null) {
+            indexNorms = new HashMap<String, Map<Integer, DocumentNorm>>();
+            norms.put(index, indexNorms);
+        }
+        Map<Integer, DocumentNorm> specNorms = indexNorms.get(spec);
+        if (specNorms == null) {
+            specNorms = new LinkedHashMap<Integer, DocumentNorm>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                protected boolean removeEldestEntry(Map.Entry<Integer, DocumentNorm> eldest) {
+                    return size() > maxSize;
+                }
+            };
+            indexNorms.put(spec, specNorms);
+        }
+        specNorms.put(docID, norm);
+    }
+    
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, Map<Integer, DocumentNorm>> indexNorms : norms.values())
+            for (Map<Integer, DocumentNorm> specNorms : indexNorms.values())
+                size += specNorms.size();
+        return size;
+    }
+    
+    public synchronized void clear() {
+        norms.clear();
+    }
+    
+    /**
+     * Writes the norms held for one index.
+     */
+    public synchronized void write(String path, IndexWrapper index) throws IOException {
+        Map<String, Map<Integer, DocumentNorm>> indexNorms = norms.get(index);
+        if (indexNorms == null)
+            indexNorms = new HashMap<String, Map<Integer, DocumentNorm>>();
+        BufferedWriter out = new BufferedWriter(new FileWriter(path));
+        try {
+            for (String spec : indexNorms.keySet()) {
+                Iterator<Map.Entry<Integer, DocumentNorm>> it = indexNorms.get(spec).entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Integer, DocumentNorm> entry = it.next();
+                    DocumentNorm norm = entry.getValue();
+                    out.write(spec + " " + entry.getKey() + " " + norm.getMaxTF() + " " 
+                            + norm.getAvgTF() + " " + norm.getDivisor());
+                    out.newLine();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Adds the norms in a file written by write() as those of the given index.
+     */
+    public void read(String path, IndexWrapper index) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length != 5) {
+                    if (line.trim().length() > 0)
+                        System.err.println("bad document norm line: " + line);
+                    continue;
+                }
+                put(index, fields[0], Integer.parseInt(fields[1]), new DocumentNorm(
+                        Double.parseDouble(fields[2]), Double.parseDouble(fields[3]), 
+                        Double.parseDouble(fields[4])));
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
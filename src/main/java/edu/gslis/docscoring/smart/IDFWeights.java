@@ -1,6 +1,8 @@
 package edu.gslis.docscoring.smart;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import edu.gslis.docscoring.support.CollectionStats;
 import edu.gslis.textrepresentation.FeatureVector;
@@ -28,6 +30,9 @@ public class IDFWeights {
     public static final char IDF_FREQ_WEIGHT = 'f';
     public static final char IDF_SQUARE_WEIGHT = 's';
     public static final char IDF_PHRASE_WEIGHT = 'P';
+    
+    /** Most document frequencies an IDFWeight keeps looked up */
+    public static final int MAX_CACHED_DOC_COUNTS = 1 << 16;
 
     public static IDFWeight getIDFWeight(char type) throws Exception
     { 
@@ -51,14 +56,41 @@ public class IDFWeights {
     public class IDFWeight {
         double numDocs = 0;
         CollectionStats collectionStats = null;
+        // least recently used first out, so a pass over many documents doesn't hold the
+        // whole vocabulary while query terms stay cached
+        Map<String, Double> docCounts = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > MAX_CACHED_DOC_COUNTS;
+            }
+        };
 
         public void weight(FeatureVector fv) throws Exception {}
+        
+        /**
+         * Weight of one term given its TF weight.  Same value weight(fv) would assign,
+         * without changing fv.  Document frequencies are looked up once per term.
+         */
+        public double weight(String term, double weight) throws Exception {
+            return weight;
+        }
+        
         public void setNumDocs(double numDocs) {
             this.numDocs = numDocs;
         }
         
         public void setCollectionStats(CollectionStats collectionStats) {
             this.collectionStats = collectionStats;
+            docCounts.clear();
+        }
+        
+        double docCount(String term) {
+            Double docFreq = docCounts.get(term);
+            if (docFreq == null) {
+                docFreq = collectionStats.docCount(term);
+                docCounts.put(term, docFreq);
+            }
+            return docFreq;
         }
     }
     
@@ -76,6 +108,13 @@ public class IDFWeights {
                 fv.setTerm(term, weight);
             } 
         }
+        
+        public double weight(String term, double weight) throws Exception {
+            double docFreq = docCount(term);
+            if(docFreq > 0)
+                weight = weight * Math.log(numDocs/docFreq);
+            return weight;
+        }
     }
     
     // prob    new_wt = new_tf * log ((num_docs - coll_freq)   / coll_freq))
@@ -91,6 +130,11 @@ public class IDFWeights {
                 fv.setTerm(term, weight);
             }         
         }
+        
+        public double weight(String term, double weight) throws Exception {
+            double docFreq = docCount(term);
+            return weight * Math.log((numDocs - docFreq)/docFreq);
+        }
     }    
     
     //  freq            new_wt = new_tf / n
@@ -104,6 +148,10 @@ public class IDFWeights {
                 fv.setTerm(term, weight);
             }          
         }
+        
+        public double weight(String term, double weight) throws Exception {
+            return weight / numDocs;
+        }
     }
     
   //squared     new_wt = new_tf * log(num_docs/coll_freq_of_term)**2
@@ -119,6 +167,11 @@ public class IDFWeights {
                 fv.setTerm(term, weight);
             }         
         }
+        
+        public double weight(String term, double weight) throws Exception {
+            double docFreq = docCount(term);
+            return weight * Math.pow(Math.log(numDocs/docFreq), 2);
+        }
     }
     
 }
@@ -48,6 +48,15 @@ public class Normalizers {
         double avgDocLen = 0;
         double avgUniqueTerms = 0;
         public void normalize(FeatureVector fv) throws Exception {}
+        
+        /**
+         * What normalize divides each weight by, for a vector whose weights, in iteration
+         * order, are the first n of weights.
+         */
+        public double divisor(double[] weights, int n) {
+            return 1.0;
+        }
+        
         public void setAvgDocLen(double avgDocLen) {
             this.avgDocLen = avgDocLen;
         }
@@ -110,6 +119,13 @@ public class Normalizers {
                 fv.setTerm(term, weight);
             }         
         }
+        
+        public double divisor(double[] weights, int n) {
+            double sum_squares = 0;
+            for (int i=0; i<n; i++)
+                sum_squares+= Math.pow(weights[i], 2);
+            return Math.sqrt(sum_squares);
+        }
     }
     
   //fourth  divide each new_wt by sum of (new_wts ** 4)
@@ -132,6 +148,13 @@ public class Normalizers {
                 fv.setTerm(term, weight);
             }         
         }
+        
+        public double divisor(double[] weights, int n) {
+            double sum = 0;
+            for (int i=0; i<n; i++)
+                sum+= Math.pow(weights[i], 4);
+            return sum;
+        }
     }
     
   //max     divide each new_wt by max new_wt in vector
@@ -159,6 +182,16 @@ public class Normalizers {
                 fv.setTerm(term, weight);
             }         
         }   
+        
+        public double divisor(double[] weights, int n) {
+            double max = 0;
+            for (int i=0; i<n; i++) {
+                if (weights[i] > max) {
+                    max = weights[i];
+                }
+            }
+            return max + 0.00001;
+        }
     }    
     
     /**
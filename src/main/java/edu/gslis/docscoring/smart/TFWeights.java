@@ -51,6 +51,14 @@ public class TFWeights
     // Simple interface for TFWeights
     public class TFWeight {
         public void weight(FeatureVector fv) throws Exception {}
+        
+        /**
+         * Weight of one term, given its frequency and the maximum and average frequency
+         * over the vector.  Same value weight(fv) would assign, without changing fv.
+         */
+        public double weight(double tf, double maxTF, double avgTF) {
+            return tf;
+        }
     }
     // Implements the tfwt_binary (b) weight
     public class TFBinaryWeight extends TFWeight {
@@ -66,6 +74,10 @@ public class TFWeights
                 fv.setTerm(term, 1.0);
             }
         }
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return 1.0;
+        }
     }
     
     public class TFMaxWeight extends TFWeight {
@@ -93,6 +105,10 @@ public class TFWeights
                 fv.setTerm(term, weight);
             }   
         }
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return tf/(maxTF + 0.00001);
+        }
     }    
 
     public class TFAugmentedWeight extends TFWeight 
@@ -116,6 +132,10 @@ public class TFWeights
                 fv.setTerm(term, weight);
             }      
         }
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return 0.5 + 0.5 + (tf/(maxTF + 0.00001));
+        }
     }
     
     public class TFSquareWeight extends TFWeight 
@@ -128,6 +148,10 @@ public class TFWeights
                 fv.setTerm(term, (weight*weight));
             }
         }
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return tf*tf;
+        }
     }
     
     public class TFLogWeight extends TFWeight {
@@ -139,6 +163,10 @@ public class TFWeights
                 fv.setTerm(term, (Math.log(weight) + 1.0));
             } 
         }    
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return Math.log(tf) + 1.0;
+        }
     }
     
     public class TFAverageWeight extends TFWeight {
@@ -159,5 +187,9 @@ public class TFWeights
                 fv.setTerm(term, weight);
             } 
         }    
+        
+        public double weight(double tf, double maxTF, double avgTF) {
+            return (1+Math.log(tf)) / (1 + Math.log(avgTF));
+        }
     }    
 }
@@ -0,0 +1,114 @@
+package edu.gslis.docscoring.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.gslis.docscoring.smart.DocumentNorm;
+import edu.gslis.docscoring.smart.IDFWeights;
+import edu.gslis.docscoring.smart.IDFWeights.IDFWeight;
+import edu.gslis.docscoring.smart.Normalizers;
+import edu.gslis.docscoring.smart.Normalizers.Normalizer;
+import edu.gslis.docscoring.smart.TFWeights;
+import edu.gslis.docscoring.smart.TFWeights.TFWeight;
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Makes a DocumentStatsFile for an index in one pass over its document vectors.  Vectors are
+ * read with the stopper set here, none by default, which should be the one the scorers' hits
+ * are hydrated with; the file records it.
+ */
+public class DocumentStatsBuilder {
+    private IndexWrapper index;
+    private Stopper stopper = null;
+    private List<String> docSpecs = new ArrayList<String>();
+    
+    public DocumentStatsBuilder(IndexWrapper index) {
+        this.index = index;
+    }
+    
+    /**
+     * Also store the normalizer divisor for a SMART document triplet, e.g. "lnc".
+     */
+    public void addDocSpec(String docSpec) {
+        docSpecs.add(docSpec);
+    }
+    
+    public void setStopper(Stopper stopper) {
+        this.stopper = stopper;
+    }
+    
+    /**
+     * @param firstDocID 1 for Indri, 0 for Lucene
+     * @param numRows one more than the largest docID
+     */
+    public void build(String path, int firstDocID, int numRows) throws Exception {
+        List<String> columns = new ArrayList<String>();
+        columns.add(DocumentStatsFile.LENGTH);
+        columns.add(DocumentStatsFile.UNIQUE_TERMS);
+        columns.add(DocumentStatsFile.MAX_TF);
+        columns.add(DocumentStatsFile.AVG_TF);
+        columns.add(DocumentStatsFile.L2_NORM);
+        
+        CollectionStats collectionStats = new IndexBackedCollectionStats();
+        ((IndexBackedCollectionStats)collectionStats).setStatSource(index);
+        int n = docSpecs.size();
+        TFWeight[] tfWeights = new TFWeight[n];
+        IDFWeight[] idfWeights = new IDFWeight[n];
+        Normalizer[] normalizers = new Normalizer[n];
+        for (int s = 0; s < n; s++) {
+            String spec = docSpecs.get(s);
+            tfWeights[s] = TFWeights.getTFWeight(spec.charAt(0));
+            idfWeights[s] = IDFWeights.getIDFWeight(spec.charAt(1));
+            idfWeights[s].setNumDocs(collectionStats.getDocCount());
+            idfWeights[s].setCollectionStats(collectionStats);
+            normalizers[s] = Normalizers.getNormalizer(spec.charAt(2));
+            columns.add(DocumentStatsFile.normColumn(spec));
+        }
+        
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(DocumentStatsFile.STOPPER, DocumentStatsFile.stopperName(stopper));
+        properties.put(DocumentStatsFile.ANALYZER, DocumentStatsFile.analyzerName(index));
+        properties.put(DocumentStatsFile.SPECS, String.join(",", docSpecs));
+        
+        DocumentStatsFile stats = DocumentStatsFile.create(path, numRows, columns, properties);
+        try {
+            for (int docID = firstDocID; docID < numRows; docID++) {
+                FeatureVector dfv = index.getDocVector(docID, stopper);
+                if (dfv == null || dfv.getFeatureCount() == 0)
+                    continue;
+                
+                double max = 0.0;
+                double sum = 0.0;
+                double l2 = 0.0;
+                Iterator<String> it = dfv.iterator();
+                while (it.hasNext()) {
+                    double tf = dfv.getFeatureWeight(it.next());
+                    if (tf > max)
+                        max = tf;
+                    sum += tf;
+                    l2 += Math.pow(tf, 2.0);
+                }
+                stats.set(DocumentStatsFile.LENGTH, docID, dfv.getLength());
+                stats.set(DocumentStatsFile.UNIQUE_TERMS, docID, dfv.getFeatureCount());
+                stats.set(DocumentStatsFile.MAX_TF, docID, max);
+                stats.set(DocumentStatsFile.AVG_TF, docID, sum/(double)dfv.getFeatureCount());
+                stats.set(DocumentStatsFile.L2_NORM, docID, Math.sqrt(l2));
+                
+                for (int s = 0; s < n; s++) {
+                    DocumentNorm norm = DocumentNorm.compute(dfv, tfWeights[s], idfWeights[s], normalizers[s]);
+                    stats.set(DocumentStatsFile.normColumn(docSpecs.get(s)), docID, norm.getDivisor());
+                }
+                
+                if ((docID - firstDocID + 1) % 100000 == 0)
+                    System.err.println("Computed stats for " + (docID - firstDocID + 1) + " documents");
+            }
+        } finally {
+            stats.close();
+        }
+    }
+}
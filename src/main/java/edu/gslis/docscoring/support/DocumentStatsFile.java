@@ -0,0 +1,245 @@
+package edu.gslis.docscoring.support;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperLuceneImpl;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Per-document statistics stored by column in a memory-mapped file, one double per document
+ * per column, indexed by docID.  Written once at index time (see DocumentStatsBuilder) and
+ * then read by any number of scorers without touching the index.
+ * 
+ * Standard columns are LENGTH, UNIQUE_TERMS, MAX_TF, AVG_TF and L2_NORM, plus one column per
+ * SMART document weighting, normColumn(spec), holding the normalizer's divisor.
+ * 
+ * The header also records what the stats were built from: the stoplist applied to document
+ * vectors (STOPPER), the index's analyzer (ANALYZER) and the SMART document weightings
+ * (SPECS).  open(path, index, stopper) rejects a file built with another analyzer or stoplist.
+ * 
+ * Layout: magic, number of rows, number of columns, the column names, number of properties,
+ * each property's name and value, then each column's values in turn.  A column must fit in
+ * one mapping, i.e. at most 2^28 rows.
+ */
+public class DocumentStatsFile {
+    public static final int MAGIC = 0x44535432;
+    
+    public static final String LENGTH = "length";
+    public static final String UNIQUE_TERMS = "unique";
+    public static final String MAX_TF = "maxtf";
+    public static final String AVG_TF = "avgtf";
+    public static final String L2_NORM = "l2";
+    
+    // header properties
+    public static final String STOPPER = "stopper";
+    public static final String ANALYZER = "analyzer";
+    public static final String SPECS = "specs";
+    
+    // name of the file in an index directory
+    public static final String FILE_NAME = "docstats";
+    
+    private RandomAccessFile file;
+    private int numRows;
+    private Map<String, String> properties = new HashMap<String, String>();
+    private Map<String, DoubleBuffer> columns = new HashMap<String, DoubleBuffer>();
+    private List<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+    
+    private DocumentStatsFile() {
+    }
+    
+    /**
+     * @return name of the column holding the divisor for a SMART document triplet, e.g. "ltc"
+     */
+    public static String normColumn(String docSpec) {
+        return "norm." + docSpec;
+    }
+    
+    /**
+     * @return "none" for no stopper or an empty one, else the stoplist's size and checksum
+     */
+    public static String stopperName(Stopper stopper) {
+        if (stopper == null || stopper.asSet().isEmpty())
+            return "none";
+        CRC32 crc = new CRC32();
+        for (String stopword : new TreeSet<String>(stopper.asSet())) {
+            crc.update(stopword.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return stopper.asSet().size() + ":" + Long.toHexString(crc.getValue());
+    }
+    
+    /**
+     * @return the analyzer class of a Lucene index, or "indri"
+     */
+    public static String analyzerName(IndexWrapper index) {
+        if (index instanceof IndexWrapperLuceneImpl)
+            return ((IndexWrapperLuceneImpl)index).getAnalyzer().getClass().getName();
+        return "indri";
+    }
+    
+    /**
+     * Create a file of zeros, open for writing.
+     * @param numRows one more than the largest docID
+     * @param properties header properties, e.g. STOPPER
+     */
+    public static DocumentStatsFile create(String path, int numRows, List<String> columnNames, 
+            Map<String, String> properties) throws IOException 
+    {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(path));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(numRows);
+            out.writeInt(columnNames.size());
+            for (String column : columnNames)
+                out.writeUTF(column);
+            out.writeInt(properties.size());
+            for (String name : properties.keySet()) {
+                out.writeUTF(name);
+                out.writeUTF(properties.get(name));
+            }
+        } finally {
+            out.close();
+        }
+        return map(path, "rw");
+    }
+    
+    public static DocumentStatsFile open(String path) throws IOException {
+        return map(path, "r");
+    }
+    
+    /**
+     * Opens a file for scoring hits from index whose vectors were stopped with stopper.
+     * @throws IOException if the file was built with a different analyzer or stoplist
+     */
+    public static DocumentStatsFile open(String path, IndexWrapper index, Stopper stopper) 
+            throws IOException 
+    {
+        DocumentStatsFile stats = open(path);
+        try {
+            stats.check(ANALYZER, analyzerName(index), path);
+            stats.check(STOPPER, stopperName(stopper), path);
+        } catch (IOException e) {
+            stats.close();
+            throw e;
+        }
+        return stats;
+    }
+    
+    /**
+     * @return the stats file in a local index directory, or null if there is none
+     */
+    public static String pathInIndex(String indexPath) {
+        if (indexPath == null)
+            return null;
+        File file = new File(indexPath, FILE_NAME);
+        return file.isFile() ? file.getPath() : null;
+    }
+    
+    private void check(String name, String expected, String path) throws IOException {
+        if (!expected.equals(getProperty(name)))
+            throw new IOException(path + " was built with " + name + " " + getProperty(name) 
+                    + ", not " + expected);
+    }
+    
+    private static DocumentStatsFile map(String path, String mode) throws IOException {
+        DocumentStatsFile stats = new DocumentStatsFile();
+        List<String> columnNames = new ArrayList<String>();
+        DataInputStream in = new DataInputStream(new FileInputStream(path));
+        long headerLength;
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a document stats file, or one from an older version: " + path);
+            stats.numRows = in.readInt();
+            int numColumns = in.readInt();
+            headerLength = 12;
+            for (int c = 0; c < numColumns; c++) {
+                String column = in.readUTF();
+                columnNames.add(column);
+                headerLength += utfLength(column);
+            }
+            int numProperties = in.readInt();
+            headerLength += 4;
+            for (int p = 0; p < numProperties; p++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                stats.properties.put(name, value);
+                headerLength += utfLength(name) + utfLength(value);
+            }
+        } finally {
+            in.close();
+        }
+        
+        stats.file = new RandomAccessFile(path, mode);
+        FileChannel.MapMode mapMode = mode.equals("r") ? FileChannel.MapMode.READ_ONLY 
+                : FileChannel.MapMode.READ_WRITE;
+        long columnLength = 8L * stats.numRows;
+        for (int c = 0; c < columnNames.size(); c++) {
+            MappedByteBuffer buffer = stats.file.getChannel().map(mapMode, 
+                    headerLength + c * columnLength, columnLength);
+            stats.mapped.add(buffer);
+            stats.columns.put(columnNames.get(c), buffer.asDoubleBuffer());
+        }
+        return stats;
+    }
+    
+    // bytes writeUTF takes for s
+    private static int utfLength(String s) throws IOException {
+        return 2 + s.getBytes("UTF-8").length;
+    }
+    
+    public int getNumRows() {
+        return numRows;
+    }
+    
+    /**
+     * @return a header property, or null if it wasn't recorded
+     */
+    public String getProperty(String name) {
+        return properties.get(name);
+    }
+    
+    public boolean hasColumn(String column) {
+        return columns.containsKey(column);
+    }
+    
+    public boolean contains(int docID) {
+        return docID >= 0 && docID < numRows;
+    }
+    
+    public double get(String column, int docID) {
+        return columns.get(column).get(docID);
+    }
+    
+    public void set(String column, int docID, double value) {
+        columns.get(column).put(docID, value);
+    }
+    
+    public void close() {
+        try {
+            for (MappedByteBuffer buffer : mapped) {
+                if (!buffer.isReadOnly())
+                    buffer.force();
+            }
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
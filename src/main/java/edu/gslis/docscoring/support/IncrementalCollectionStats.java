@@ -0,0 +1,110 @@
+package edu.gslis.docscoring.support;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Collection statistics that grow as documents arrive, for filtering runs where the
+ * background model may only use what has been seen so far.
+ *
+ * Only terms registered with track() are counted, so memory is bounded by the vocabulary
+ * of the queries being filtered rather than by the stream.  Counts may be seeded from a
+ * prior source (e.g. the training index) so scores stay on the scale used for training.
+ */
+public class IncrementalCollectionStats extends CollectionStats {
+
+	private CollectionStats prior;
+
+	/**
+	 * A map of term to {collection frequency, document frequency}
+	 */
+	private Map<String,double[]> tracked;
+
+	public IncrementalCollectionStats() {
+		tracked = new ConcurrentHashMap<String,double[]>();
+	}
+
+	/**
+	 * Seeds the counts from an index or dumpindex-style file.
+	 */
+	public void setStatSource(String statSource) {
+		IndexBackedCollectionStats stats = new IndexBackedCollectionStats();
+		stats.setStatSource(statSource);
+		setPrior(stats);
+	}
+
+	/**
+	 * Seeds the counts from existing statistics.  Must be called before any terms are tracked.
+	 * @param prior statistics to start from
+	 */
+	public void setPrior(CollectionStats prior) {
+		this.prior = prior;
+		tokCount = prior.getTokCount();
+		docCount = prior.getDocCount();
+		termTypeCount = prior.getTermTypeCount();
+	}
+
+	/**
+	 * Start counting a term.  Terms that aren't tracked always report zero counts.
+	 * @param term term
+	 */
+	public void track(String term) {
+		if(tracked.containsKey(term))
+			return;
+		double[] counts = new double[2];
+		if(prior != null) {
+			counts[0] = prior.termCount(term);
+			counts[1] = prior.docCount(term);
+		}
+		tracked.put(term, counts);
+	}
+
+	/**
+	 * Add a newly arrived document to the statistics.
+	 * @param docVector the document's term counts
+	 * @param docLength the document's length in tokens
+	 */
+	public synchronized void add(FeatureVector docVector, double docLength) {
+		docCount += 1.0;
+		tokCount += docLength;
+
+		// walk whichever side is smaller
+		if(docVector.getFeatureCount() < tracked.size()) {
+			Iterator<String> terms = docVector.iterator();
+			while(terms.hasNext()) {
+				String term = terms.next();
+				double[] counts = tracked.get(term);
+				if(counts != null) {
+					counts[0] += docVector.getFeatureWeight(term);
+					counts[1] += 1.0;
+				}
+			}
+		} else {
+			Iterator<String> terms = tracked.keySet().iterator();
+			while(terms.hasNext()) {
+				String term = terms.next();
+				double tf = docVector.getFeatureWeight(term);
+				if(tf > 0) {
+					double[] counts = tracked.get(term);
+					counts[0] += tf;
+					counts[1] += 1.0;
+				}
+			}
+		}
+	}
+
+	@Override
+	public double termCount(String term) {
+		double[] counts = tracked.get(term);
+		return (counts == null) ? 0.0 : counts[0];
+	}
+
+	@Override
+	public double docCount(String term) {
+		double[] counts = tracked.get(term);
+		return (counts == null) ? 0.0 : counts[1];
+	}
+}
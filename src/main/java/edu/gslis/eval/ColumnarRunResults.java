@@ -0,0 +1,148 @@
+package edu.gslis.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * A run held as parallel arrays: per query, an int[] of docno ids and a double[] of scores, in
+ * file order.  Docnos are interned once across the whole run.  Compared with RetrievalResults
+ * this costs a few bytes per line rather than a SearchHit with its own map and vector, so very
+ * large runs fit in memory for evaluation or fusion.
+ *
+ * getResultsForQuery builds SearchHits on demand for code that wants them.
+ */
+public class ColumnarRunResults implements RunResults {
+
+	private Map<String,Integer> queryIds;
+	private List<String> queryNames;
+	private List<int[]> docnoIdsByQuery;
+	private List<double[]> scoresByQuery;
+	private List<Integer> sizes;
+
+	private Map<String,Integer> docnoIds;
+	private List<String> docnos;
+
+
+	public ColumnarRunResults(String pathToResultsFile) {
+		queryIds = new HashMap<String,Integer>();
+		queryNames = new ArrayList<String>();
+		docnoIdsByQuery = new ArrayList<int[]>();
+		scoresByQuery = new ArrayList<double[]>();
+		sizes = new ArrayList<Integer>();
+		docnoIds = new HashMap<String,Integer>();
+		docnos = new ArrayList<String>();
+
+		try {
+			RunFileReader reader = new RunFileReader(pathToResultsFile);
+			String lastQuery = null;
+			int queryId = -1;
+			while(reader.next()) {
+				if(reader.getQuery() != lastQuery) {
+					lastQuery = reader.getQuery();
+					queryId = queryId(lastQuery);
+				}
+				add(queryId, docnoId(reader.getDocno()), reader.getScore());
+			}
+			reader.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		for(int i=0; i<queryNames.size(); i++) {
+			docnoIdsByQuery.set(i, Arrays.copyOf(docnoIdsByQuery.get(i), sizes.get(i)));
+			scoresByQuery.set(i, Arrays.copyOf(scoresByQuery.get(i), sizes.get(i)));
+		}
+	}
+
+	private int queryId(String query) {
+		Integer id = queryIds.get(query);
+		if(id == null) {
+			id = queryNames.size();
+			queryIds.put(query, id);
+			queryNames.add(query);
+			docnoIdsByQuery.add(new int[64]);
+			scoresByQuery.add(new double[64]);
+			sizes.add(0);
+		}
+		return id;
+	}
+
+	private int docnoId(String docno) {
+		Integer id = docnoIds.get(docno);
+		if(id == null) {
+			id = docnos.size();
+			docnoIds.put(docno, id);
+			docnos.add(docno);
+		}
+		return id;
+	}
+
+	private void add(int queryId, int docnoId, double score) {
+		int size = sizes.get(queryId);
+		int[] ids = docnoIdsByQuery.get(queryId);
+		double[] scores = scoresByQuery.get(queryId);
+		if(size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+			docnoIdsByQuery.set(queryId, ids);
+			scoresByQuery.set(queryId, scores);
+		}
+		ids[size] = docnoId;
+		scores[size] = score;
+		sizes.set(queryId, size + 1);
+	}
+
+	/**
+	 * @return queries in order of first appearance
+	 */
+	public List<String> getQueryNames() {
+		return queryNames;
+	}
+
+	/**
+	 * @return ids of the query's docnos in file order (see getDocno), or null for an unknown query
+	 */
+	public int[] getDocnoIds(String queryTitle) {
+		Integer queryId = queryIds.get(queryTitle);
+		return (queryId == null) ? null : docnoIdsByQuery.get(queryId);
+	}
+
+	/**
+	 * @return the query's scores in file order, or null for an unknown query
+	 */
+	public double[] getScores(String queryTitle) {
+		Integer queryId = queryIds.get(queryTitle);
+		return (queryId == null) ? null : scoresByQuery.get(queryId);
+	}
+
+	public String getDocno(int docnoId) {
+		return docnos.get(docnoId);
+	}
+
+	public int getNumDocnos() {
+		return docnos.size();
+	}
+
+	public SearchHits getResultsForQuery(String queryTitle) {
+		Integer queryId = queryIds.get(queryTitle);
+		if(queryId == null)
+			return null;
+		int[] ids = docnoIdsByQuery.get(queryId);
+		double[] scores = scoresByQuery.get(queryId);
+		SearchHits hits = new SearchHits();
+		for(int i=0; i<ids.length; i++) {
+			SearchHit hit = new SearchHit();
+			hit.setQueryName(queryTitle);
+			hit.setDocno(docnos.get(ids[i]));
+			hit.setScore(scores[i]);
+			hits.add(hit);
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,418 @@
+package edu.gslis.eval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Qrels for large judgment pools.
+ *
+ * Query names and docnos are interned to ints.  Each query's judgments are a sorted long[]
+ * with the docno id in the high 32 bits and the relevance level in the low 32, so a lookup is
+ * one hash of the docno and a binary search.  The file is read a line at a time without
+ * regular expressions, and the interned form can be saved to a binary cache and reloaded
+ * without parsing.
+ *
+ * Can be used wherever a Qrels is expected.  As in Qrels, a docno judged twice for the same
+ * query produces a warning; here the higher level is kept.
+ */
+public class CompactQrels extends Qrels {
+
+	private static final int CACHE_MAGIC = 0x51524c31;
+
+	private int minRel;
+
+	private Map<String,Integer> docnoIds;
+	private List<String> docnos;
+
+	private Map<String,Integer> queryIds;
+	private List<String> queryNames;
+
+	// per query: sorted (docnoId << 32 | level) and the number of entries with level >= minRel
+	private List<long[]> judgments;
+	private List<Integer> relCounts;
+
+
+	/**
+	 * @param pathToQrelsFile Path to qrels
+	 * @param storeNonRel Whether to store non-relevant judgments
+	 * @param minRel           what is the minimum score for "relevance"?  e.g. 1?  2?
+	 */
+	public CompactQrels(String pathToQrelsFile, boolean storeNonRel, int minRel) {
+		this(minRel);
+		try {
+			load(pathToQrelsFile, storeNonRel);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private CompactQrels(int minRel) {
+		this.minRel = minRel;
+		docnoIds = new HashMap<String,Integer>();
+		docnos = new ArrayList<String>();
+		queryIds = new HashMap<String,Integer>();
+		queryNames = new ArrayList<String>();
+		judgments = new ArrayList<long[]>();
+		relCounts = new ArrayList<Integer>();
+	}
+
+	/**
+	 * Reads qrels from a binary cache if one exists, is newer than the qrels file and was
+	 * built with the same minRel.  Otherwise parses the qrels and writes the cache.
+	 * @param pathToQrelsFile Path to qrels
+	 * @param pathToCache Path to the binary cache
+	 * @param minRel minimum score for relevance
+	 * @return all judgments, relevant and not
+	 */
+	public static CompactQrels load(String pathToQrelsFile, String pathToCache, int minRel) {
+		File qrelsFile = new File(pathToQrelsFile);
+		File cacheFile = new File(pathToCache);
+		if(cacheFile.exists() && cacheFile.lastModified() >= qrelsFile.lastModified()) {
+			try {
+				CompactQrels qrels = readCache(pathToCache);
+				if(qrels.minRel == minRel)
+					return qrels;
+			} catch (IOException e) {
+				System.err.println("unable to read qrels cache " + pathToCache + ", rebuilding.");
+			}
+		}
+		CompactQrels qrels = new CompactQrels(pathToQrelsFile, true, minRel);
+		try {
+			qrels.writeCache(pathToCache);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return qrels;
+	}
+
+	private void load(String pathToQrelsFile, boolean storeNonRel) throws IOException {
+		// growable judgment arrays, indexed by query id
+		List<long[]> building = new ArrayList<long[]>();
+		List<Integer> sizes = new ArrayList<Integer>();
+
+		BufferedReader reader = new BufferedReader(new FileReader(pathToQrelsFile), 1 << 16);
+		String[] toks = new String[4];
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(split(line, toks) != 4) {
+				System.err.println("bad qrels line: " + line + ":");
+				continue;
+			}
+			int r = Integer.parseInt(toks[3]);
+			if(r < minRel && !storeNonRel)
+				continue;
+
+			int queryId = internQuery(toks[0]);
+			int docnoId = internDocno(toks[2]);
+
+			if(queryId == building.size()) {
+				building.add(new long[16]);
+				sizes.add(0);
+			}
+			long[] entries = building.get(queryId);
+			int size = sizes.get(queryId);
+			if(size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+				building.set(queryId, entries);
+			}
+			entries[size] = pack(docnoId, r);
+			sizes.set(queryId, size + 1);
+		}
+		reader.close();
+
+		for(int queryId=0; queryId<building.size(); queryId++) {
+			long[] entries = Arrays.copyOf(building.get(queryId), sizes.get(queryId));
+			judgments.set(queryId, dedupe(queryNames.get(queryId), entries));
+			relCounts.set(queryId, countRel(judgments.get(queryId)));
+		}
+	}
+
+	/**
+	 * Whitespace split without regular expressions.
+	 * @return number of tokens found; at most toks.length are stored
+	 */
+	private static int split(String line, String[] toks) {
+		int n = 0;
+		int i = 0;
+		int len = line.length();
+		while(i < len) {
+			while(i < len && Character.isWhitespace(line.charAt(i)))
+				i++;
+			if(i == len)
+				break;
+			int start = i;
+			while(i < len && !Character.isWhitespace(line.charAt(i)))
+				i++;
+			if(n < toks.length)
+				toks[n] = line.substring(start, i);
+			n++;
+		}
+		return n;
+	}
+
+	private long[] dedupe(String query, long[] entries) {
+		Arrays.sort(entries);
+		int kept = 0;
+		for(int i=0; i<entries.length; i++) {
+			if(kept > 0 && docnoId(entries[kept-1]) == docnoId(entries[i])) {
+				System.err.println("Warning: input file contains duplicate judgments for ("  +
+						query + "," + docnos.get(docnoId(entries[i])) + ")");
+				if(level(entries[i]) > level(entries[kept-1]))
+					entries[kept-1] = entries[i];
+				continue;
+			}
+			entries[kept++] = entries[i];
+		}
+		return (kept == entries.length) ? entries : Arrays.copyOf(entries, kept);
+	}
+
+	private int countRel(long[] entries) {
+		int n = 0;
+		for(long entry : entries) {
+			if(level(entry) >= minRel)
+				n++;
+		}
+		return n;
+	}
+
+	private int internQuery(String query) {
+		Integer id = queryIds.get(query);
+		if(id == null) {
+			id = queryNames.size();
+			queryIds.put(query, id);
+			queryNames.add(query);
+			judgments.add(new long[0]);
+			relCounts.add(0);
+		}
+		return id;
+	}
+
+	private int internDocno(String docno) {
+		Integer id = docnoIds.get(docno);
+		if(id == null) {
+			id = docnos.size();
+			docnoIds.put(docno, id);
+			docnos.add(docno);
+		}
+		return id;
+	}
+
+	private static long pack(int docnoId, int level) {
+		return ((long)docnoId << 32) | (level & 0xffffffffL);
+	}
+
+	private static int docnoId(long entry) {
+		return (int)(entry >>> 32);
+	}
+
+	private static int level(long entry) {
+		return (int)entry;
+	}
+
+	/**
+	 * @return index into the query's judgments, or a negative value if the docno is unjudged
+	 */
+	private int find(String query, String docno) {
+		Integer queryId = queryIds.get(query);
+		Integer docnoId = docnoIds.get(docno);
+		if(queryId == null || docnoId == null)
+			return -1;
+		return find(judgments.get(queryId), docnoId);
+	}
+
+	private static int find(long[] entries, int docnoId) {
+		// entries for a docno sort after its id with a zero low word
+		int i = Arrays.binarySearch(entries, (long)docnoId << 32);
+		if(i < 0)
+			i = -i - 1;
+		if(i < entries.length && docnoId(entries[i]) == docnoId)
+			return i;
+		return -1;
+	}
+
+	@Override
+	public boolean isRel(String query, String docno) {
+		int i = find(query, docno);
+		return i >= 0 && level(judgments.get(queryIds.get(query))[i]) >= minRel;
+	}
+
+	/**
+	 * @return the level of a relevant document, or 0 if the document is not relevant
+	 */
+	@Override
+	public int getRelLevel(String query, String docno) {
+		int i = find(query, docno);
+		if(i < 0)
+			return 0;
+		int level = level(judgments.get(queryIds.get(query))[i]);
+		return (level >= minRel) ? level : 0;
+	}
+
+	/**
+	 * @return true if the document has any judgment, relevant or not, for this query
+	 */
+	public boolean isJudged(String query, String docno) {
+		return find(query, docno) >= 0;
+	}
+
+	@Override
+	public Set<String> getRelDocs(String query) {
+		return docsFor(query, true);
+	}
+
+	@Override
+	public Set<String> getNonRelDocs(String query) {
+		return docsFor(query, false);
+	}
+
+	private Set<String> docsFor(String query, boolean relevant) {
+		Integer queryId = queryIds.get(query);
+		if(queryId == null)
+			return null;
+		Set<String> docs = new HashSet<String>();
+		for(long entry : judgments.get(queryId)) {
+			if((level(entry) >= minRel) == relevant)
+				docs.add(docnos.get(docnoId(entry)));
+		}
+		return docs.isEmpty() ? null : docs;
+	}
+
+	@Override
+	public Set<String> getPool(String query) {
+		Integer queryId = queryIds.get(query);
+		if(queryId == null || judgments.get(queryId).length == 0) {
+			System.err.println("no judgments found for query " + query);
+			return null;
+		}
+		Set<String> pool = new HashSet<String>();
+		for(long entry : judgments.get(queryId)) {
+			pool.add(docnos.get(docnoId(entry)));
+		}
+		return pool;
+	}
+
+	@Override
+	public double numRel(String query) {
+		Integer queryId = queryIds.get(query);
+		if(queryId == null)
+			return 0.0;
+		return (double)relCounts.get(queryId);
+	}
+
+	@Override
+	public List<String> getOrderedQueryList() {
+		return queryNames;
+	}
+
+	@Override
+	public void removeQrel(String queryName, String docno) {
+		int i = find(queryName, docno);
+		if(i < 0) {
+			System.err.println("can't remove docno " + docno + " from qrels for query " + queryName + " because it is not judged.");
+			return;
+		}
+		int queryId = queryIds.get(queryName);
+		long[] entries = judgments.get(queryId);
+		long[] removed = new long[entries.length - 1];
+		System.arraycopy(entries, 0, removed, 0, i);
+		System.arraycopy(entries, i + 1, removed, i, entries.length - i - 1);
+		judgments.set(queryId, removed);
+		relCounts.set(queryId, countRel(removed));
+	}
+
+	@Override
+	public void addQrel(String queryName, String docno) {
+		int queryId = internQuery(queryName);
+		int docnoId = internDocno(docno);
+		long[] entries = judgments.get(queryId);
+		int i = find(entries, docnoId);
+		if(i >= 0) {
+			if(level(entries[i]) < minRel)
+				entries[i] = pack(docnoId, minRel);
+		} else {
+			entries = Arrays.copyOf(entries, entries.length + 1);
+			entries[entries.length - 1] = pack(docnoId, minRel);
+			Arrays.sort(entries);
+			judgments.set(queryId, entries);
+		}
+		relCounts.set(queryId, countRel(entries));
+	}
+
+	@Override
+	public boolean contains(String docno) {
+		Integer docnoId = docnoIds.get(docno);
+		if(docnoId == null)
+			return false;
+		for(long[] entries : judgments) {
+			if(find(entries, docnoId) >= 0)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String docno, String query) {
+		return isJudged(query, docno);
+	}
+
+	public void writeCache(String pathToCache) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathToCache), 1 << 16));
+		out.writeInt(CACHE_MAGIC);
+		out.writeInt(minRel);
+		out.writeInt(docnos.size());
+		for(String docno : docnos) {
+			out.writeUTF(docno);
+		}
+		out.writeInt(queryNames.size());
+		for(int queryId=0; queryId<queryNames.size(); queryId++) {
+			out.writeUTF(queryNames.get(queryId));
+			long[] entries = judgments.get(queryId);
+			out.writeInt(entries.length);
+			for(long entry : entries) {
+				out.writeLong(entry);
+			}
+		}
+		out.close();
+	}
+
+	public static CompactQrels readCache(String pathToCache) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pathToCache), 1 << 16));
+		try {
+			if(in.readInt() != CACHE_MAGIC)
+				throw new IOException("not a qrels cache: " + pathToCache);
+			CompactQrels qrels = new CompactQrels(in.readInt());
+			int numDocnos = in.readInt();
+			for(int i=0; i<numDocnos; i++) {
+				qrels.internDocno(in.readUTF());
+			}
+			int numQueries = in.readInt();
+			for(int i=0; i<numQueries; i++) {
+				int queryId = qrels.internQuery(in.readUTF());
+				long[] entries = new long[in.readInt()];
+				for(int j=0; j<entries.length; j++) {
+					entries[j] = in.readLong();
+				}
+				qrels.judgments.set(queryId, entries);
+				qrels.relCounts.set(queryId, qrels.countRel(entries));
+			}
+			return qrels;
+		} finally {
+			in.close();
+		}
+	}
+}
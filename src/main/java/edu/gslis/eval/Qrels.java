@@ -1,17 +1,16 @@
 package edu.gslis.eval;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.IOUtils;
 
 /**
  * Container for <code>trec_eval</code> -type qrels.
@@ -71,10 +70,10 @@ public class Qrels {
 			if(storeNonRel)
 				nonRel = new HashMap<String,Set<String>>();
 
-			List<String> lines = IOUtils.readLines(new FileReader(new File(pathToQrelsFile)));
-			Iterator<String> linesIt = lines.iterator();
-			while(linesIt.hasNext()) {
-				String line = linesIt.next();
+			Set<String> seenQueryNames = new HashSet<String>();
+			BufferedReader reader = new BufferedReader(new FileReader(new File(pathToQrelsFile)));
+			String line;
+			while((line = reader.readLine()) != null) {
 				String[] toks = SPACE_PATTERN.split(line);
 				if(toks==null || toks.length != 4) {
 					System.err.println("bad qrels line: " + line + ":");
@@ -120,9 +119,10 @@ public class Qrels {
 					}
 				}
 				
-				if(! orderedQueryNames.contains(query))
+				if(seenQueryNames.add(query))
 					orderedQueryNames.add(query);
 			}
+			reader.close();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -161,7 +161,7 @@ public class Qrels {
 	}
 
 	public Set<String> getNonRelDocs(String query) {
-		if(!nonRel.containsKey(query)) {
+		if(nonRel == null || !nonRel.containsKey(query)) {
 			//System.err.println("no non-relevant documents found for query " + query);
 			return null;
 		}
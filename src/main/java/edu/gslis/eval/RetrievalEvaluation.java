@@ -0,0 +1,351 @@
+package edu.gslis.eval;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.searchhits.SearchHitsBatch;
+
+/**
+ * Ad hoc retrieval measures computed in-process, following trec_eval's conventions:
+ * <ul>
+ * <li>each query's hits are ranked by score, then by docno, both decreasing; scores are compared
+ * at float precision, as trec_eval reads them, and the rank column of a run file is ignored</li>
+ * <li>a docno retrieved twice for a query counts once, at its first position in that order</li>
+ * <li>only queries with results and at least one relevant document are evaluated, unless
+ * setCompleteAverage(true) is set (trec_eval -c), in which case every query in the qrels with a
+ * relevant document counts and missing queries score zero</li>
+ * <li>aggregates are means over evaluated queries, except num_ret, num_rel and num_rel_ret, which
+ * are sums</li>
+ * </ul>
+ * Relevance is whatever the Qrels says it is, so a Qrels loaded with minRel 1 matches trec_eval's
+ * default.  nDCG gains are the judged relevance levels.  bpref needs non-relevant judgments, so
+ * the qrels should be read with storeNonRel set.
+ *
+ * Queries are evaluated in parallel when setNumThreads is greater than 1.
+ */
+public class RetrievalEvaluation {
+	public static final int[] DEFAULT_CUTOFFS = {5, 10, 15, 20, 30, 100, 200, 500, 1000};
+
+	public static final String MAP = "map";
+	public static final String RPREC = "Rprec";
+	public static final String BPREF = "bpref";
+	public static final String NUM_RET = "num_ret";
+	public static final String NUM_REL = "num_rel";
+	public static final String NUM_REL_RET = "num_rel_ret";
+	public static final String P = "P_";
+	public static final String RECALL = "recall_";
+	public static final String NDCG_CUT = "ndcg_cut_";
+
+	private Qrels qrels;
+	private int[] cutoffs = DEFAULT_CUTOFFS;
+	private int numThreads = 1;
+	private boolean completeAverage = false;
+
+	private Map<String,Map<String,Double>> queryStats;
+
+	private static final Comparator<SearchHit> TREC_EVAL_ORDER = new Comparator<SearchHit>() {
+		public int compare(SearchHit x, SearchHit y) {
+			int c = Float.compare((float)y.getScore(), (float)x.getScore());
+			if(c != 0)
+				return c;
+			return y.getDocno().compareTo(x.getDocno());
+		}
+	};
+
+
+	public RetrievalEvaluation(Qrels qrels) {
+		this.qrels = qrels;
+		this.queryStats = new LinkedHashMap<String,Map<String,Double>>();
+	}
+
+	public void setCutoffs(int[] cutoffs) {
+		this.cutoffs = cutoffs;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public void setCompleteAverage(boolean completeAverage) {
+		this.completeAverage = completeAverage;
+	}
+
+	public void evaluate(RunResults run) {
+		evaluate(run, qrels.getOrderedQueryList());
+	}
+
+	public void evaluate(final SearchHitsBatch batch) {
+		evaluate(new RunResults() {
+			public SearchHits getResultsForQuery(String queryTitle) {
+				return batch.getSearchHits(queryTitle);
+			}
+		}, qrels.getOrderedQueryList());
+	}
+
+	/**
+	 * Evaluate a run, replacing the results of any previous call.
+	 * @param run results to evaluate
+	 * @param queryNames queries to consider, in output order
+	 */
+	public void evaluate(final RunResults run, List<String> queryNames) {
+		queryStats = new LinkedHashMap<String,Map<String,Double>>();
+
+		List<String> toEvaluate = new ArrayList<String>();
+		Iterator<String> queryIterator = queryNames.iterator();
+		while(queryIterator.hasNext()) {
+			String queryName = queryIterator.next();
+			if(qrels.numRel(queryName) == 0.0)
+				continue;
+			if(run.getResultsForQuery(queryName) == null && !completeAverage)
+				continue;
+			toEvaluate.add(queryName);
+		}
+
+		if(numThreads <= 1 || toEvaluate.size() <= 1) {
+			for(String queryName : toEvaluate) {
+				queryStats.put(queryName, evaluateQuery(queryName, run.getResultsForQuery(queryName)));
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, toEvaluate.size()));
+		try {
+			List<Future<Map<String,Double>>> futures = new ArrayList<Future<Map<String,Double>>>(toEvaluate.size());
+			for(final String queryName : toEvaluate) {
+				futures.add(executor.submit(new Callable<Map<String,Double>>() {
+					public Map<String,Double> call() throws Exception {
+						return evaluateQuery(queryName, run.getResultsForQuery(queryName));
+					}
+				}));
+			}
+			for(int i=0; i<toEvaluate.size(); i++) {
+				queryStats.put(toEvaluate.get(i), futures.get(i).get());
+			}
+		} catch (ExecutionException e) {
+			// fail as the serial path would, rather than return a partial evaluation
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new IllegalStateException("evaluation failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for evaluation", e);
+		} finally {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private Map<String,Double> evaluateQuery(String queryName, SearchHits hits) {
+		SearchHit[] ranked = rank(hits);
+
+		double numRel = qrels.numRel(queryName);
+		Set<String> nonRelDocs = qrels.getNonRelDocs(queryName);
+		double numNonRel = (nonRelDocs == null) ? 0.0 : nonRelDocs.size();
+		double bprefDenominator = Math.min(numRel, numNonRel);
+		int rPrecCutoff = (int)numRel;
+
+		int[] sortedCutoffs = cutoffs.clone();
+		Arrays.sort(sortedCutoffs);
+		double[] relRetAtCutoff = new double[sortedCutoffs.length];
+		double[] dcgAtCutoff = new double[sortedCutoffs.length];
+
+		double relRet = 0.0;
+		double nonRelSoFar = 0.0;
+		double sumPrecision = 0.0;
+		double bpref = 0.0;
+		double rPrec = 0.0;
+		double dcg = 0.0;
+		int c = 0;
+		for(int i=0; i<ranked.length; i++) {
+			String docno = ranked[i].getDocno();
+			int rank = i + 1;
+			if(qrels.isRel(queryName, docno)) {
+				relRet += 1.0;
+				sumPrecision += relRet / rank;
+				if(nonRelSoFar > 0.0)
+					bpref += 1.0 - Math.min(nonRelSoFar, numRel) / bprefDenominator;
+				else
+					bpref += 1.0;
+				dcg += gain(queryName, docno) / log2(rank + 1);
+			} else if(qrels.contains(docno, queryName)) {
+				nonRelSoFar += 1.0;
+			}
+
+			if(rank == rPrecCutoff)
+				rPrec = relRet;
+			while(c < sortedCutoffs.length && sortedCutoffs[c] == rank) {
+				relRetAtCutoff[c] = relRet;
+				dcgAtCutoff[c] = dcg;
+				c++;
+			}
+		}
+		// cutoffs deeper than the ranking see everything retrieved
+		if(ranked.length < rPrecCutoff)
+			rPrec = relRet;
+		for(; c<sortedCutoffs.length; c++) {
+			relRetAtCutoff[c] = relRet;
+			dcgAtCutoff[c] = dcg;
+		}
+
+		double[] idealGains = idealGains(queryName);
+
+		Map<String,Double> stats = new LinkedHashMap<String,Double>();
+		stats.put(NUM_RET, (double)ranked.length);
+		stats.put(NUM_REL, numRel);
+		stats.put(NUM_REL_RET, relRet);
+		stats.put(MAP, sumPrecision / numRel);
+		stats.put(RPREC, rPrec / numRel);
+		stats.put(BPREF, bpref / numRel);
+		for(int i=0; i<sortedCutoffs.length; i++) {
+			stats.put(P + sortedCutoffs[i], relRetAtCutoff[i] / sortedCutoffs[i]);
+		}
+		for(int i=0; i<sortedCutoffs.length; i++) {
+			stats.put(RECALL + sortedCutoffs[i], relRetAtCutoff[i] / numRel);
+		}
+		for(int i=0; i<sortedCutoffs.length; i++) {
+			double idcg = 0.0;
+			for(int j=0; j<idealGains.length && j<sortedCutoffs[i]; j++) {
+				idcg += idealGains[j] / log2(j + 2);
+			}
+			stats.put(NDCG_CUT + sortedCutoffs[i], (idcg > 0.0) ? dcgAtCutoff[i] / idcg : 0.0);
+		}
+		return stats;
+	}
+
+	/**
+	 * @return hits in trec_eval order with repeated docnos dropped; the input is left untouched
+	 */
+	private SearchHit[] rank(SearchHits hits) {
+		if(hits == null)
+			return new SearchHit[0];
+		SearchHit[] ranked = hits.hits().toArray(new SearchHit[hits.size()]);
+		Arrays.sort(ranked, TREC_EVAL_ORDER);
+
+		Set<String> seen = new HashSet<String>(ranked.length * 2);
+		int kept = 0;
+		for(SearchHit hit : ranked) {
+			if(seen.add(hit.getDocno()))
+				ranked[kept++] = hit;
+		}
+		return (kept == ranked.length) ? ranked : Arrays.copyOf(ranked, kept);
+	}
+
+	private double gain(String queryName, String docno) {
+		return Math.max(0, qrels.getRelLevel(queryName, docno));
+	}
+
+	/**
+	 * @return gains of all relevant documents, largest first
+	 */
+	private double[] idealGains(String queryName) {
+		Set<String> relDocs = qrels.getRelDocs(queryName);
+		if(relDocs == null)
+			return new double[0];
+		double[] gains = new double[relDocs.size()];
+		int k=0;
+		for(String docno : relDocs) {
+			gains[k++] = -gain(queryName, docno);
+		}
+		Arrays.sort(gains);
+		for(int i=0; i<gains.length; i++) {
+			gains[i] = -gains[i];
+		}
+		return gains;
+	}
+
+	private static double log2(double x) {
+		return Math.log(x) / Math.log(2.0);
+	}
+
+
+	/**
+	 * @return names of evaluated queries, in the order given to evaluate
+	 */
+	public List<String> getQueryNames() {
+		return new ArrayList<String>(queryStats.keySet());
+	}
+
+	/**
+	 * @param queryName query
+	 * @return measure name to value, or null if the query was not evaluated
+	 */
+	public Map<String,Double> getQueryStats(String queryName) {
+		return queryStats.get(queryName);
+	}
+
+	public double getQueryStat(String queryName, String statName) {
+		Map<String,Double> stats = queryStats.get(queryName);
+		if(stats == null || !stats.containsKey(statName))
+			return 0.0;
+		return stats.get(statName);
+	}
+
+	/**
+	 * @return measure name to mean (or, for the num_ counts, sum) over evaluated queries
+	 */
+	public Map<String,Double> getAggregateStats() {
+		Map<String,Double> aggregate = new LinkedHashMap<String,Double>();
+		for(Map<String,Double> stats : queryStats.values()) {
+			for(String statName : stats.keySet()) {
+				Double sum = aggregate.get(statName);
+				aggregate.put(statName, (sum == null ? 0.0 : sum) + stats.get(statName));
+			}
+		}
+		if(queryStats.isEmpty())
+			return aggregate;
+		for(String statName : aggregate.keySet()) {
+			if(!statName.startsWith("num_"))
+				aggregate.put(statName, aggregate.get(statName) / queryStats.size());
+		}
+		return aggregate;
+	}
+
+	public double getAggregateStat(String statName) {
+		Double value = getAggregateStats().get(statName);
+		return (value == null) ? 0.0 : value;
+	}
+
+	/**
+	 * Write results as trec_eval -q does: one line per measure per query, then "all".
+	 */
+	public void write(Writer writer) throws IOException {
+		for(String queryName : queryStats.keySet()) {
+			write(writer, queryName, queryStats.get(queryName));
+		}
+		Map<String,Double> aggregate = getAggregateStats();
+		aggregate.put("num_q", (double)queryStats.size());
+		write(writer, "all", aggregate);
+		writer.flush();
+	}
+
+	private void write(Writer writer, String queryName, Map<String,Double> stats) throws IOException {
+		for(String statName : stats.keySet()) {
+			double value = stats.get(statName);
+			String formatted = statName.startsWith("num_") ? Long.toString(Math.round(value)) :
+				String.format("%.4f", value);
+			writer.write(String.format("%-22s\t%s\t%s", statName, queryName, formatted) +
+					System.getProperty("line.separator"));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package edu.gslis.eval;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * Reads a trec_eval style run file one line at a time, without regular expressions and without
+ * holding more than a line in memory.
+ *
+ * Lines are split on whitespace in place.  Consecutive lines for the same query share one query
+ * String.  Use next() to walk records, or nextQuery() to read one query's block at a time when
+ * the file is grouped by query, as run files normally are.
+ */
+public class RunFileReader {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final int QUERY_COLUMN = 0;
+	private static final int DOCNO_COLUMN = 2;
+	private static final int SCORE_COLUMN = 4;
+
+	private InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	private byte[] line = new byte[256];
+	private int lineLength;
+	private int[] starts = new int[6];
+	private int[] ends = new int[6];
+
+	private byte[] queryBytes = new byte[0];
+	private String query;
+	private String docno;
+	private double score;
+
+	// a record read past the end of the previous query's block
+	private boolean pending = false;
+	private String pendingQuery;
+
+	public RunFileReader(String pathToRunFile) throws IOException {
+		this.in = new FileInputStream(pathToRunFile);
+	}
+
+	/**
+	 * Advance to the next record.
+	 * @return false at end of file
+	 */
+	public boolean next() throws IOException {
+		if(pending) {
+			pending = false;
+			query = pendingQuery;
+			return true;
+		}
+		while(readLine()) {
+			int fields = split();
+			if(fields == 0)
+				continue;
+			if(fields <= SCORE_COLUMN) {
+				System.err.println("bad run line: " + new String(line, 0, lineLength, UTF8) + ":");
+				continue;
+			}
+			query = query();
+			docno = field(DOCNO_COLUMN);
+			score = Double.parseDouble(field(SCORE_COLUMN));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read every remaining line of the current query, i.e. up to the next change of query name.
+	 * @return the block's hits in file order, or null at end of file
+	 */
+	public SearchHits nextQuery() throws IOException {
+		if(!next())
+			return null;
+		SearchHits hits = new SearchHits();
+		String blockQuery = query;
+		do {
+			if(!query.equals(blockQuery)) {
+				pending = true;
+				pendingQuery = query;
+				query = blockQuery;
+				break;
+			}
+			SearchHit hit = new SearchHit();
+			hit.setQueryName(query);
+			hit.setDocno(docno);
+			hit.setScore(score);
+			hits.add(hit);
+		} while(next());
+		return hits;
+	}
+
+	/**
+	 * @return query of the current record, or of the block nextQuery just returned
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	public String getDocno() {
+		return docno;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean readLine() throws IOException {
+		lineLength = 0;
+		while(true) {
+			if(position == limit) {
+				limit = in.read(buffer, 0, buffer.length);
+				position = 0;
+				if(limit <= 0) {
+					limit = 0;
+					return lineLength > 0;
+				}
+			}
+			byte b = buffer[position++];
+			if(b == '\n')
+				return true;
+			if(lineLength == line.length)
+				line = Arrays.copyOf(line, line.length * 2);
+			line[lineLength++] = b;
+		}
+	}
+
+	/**
+	 * @return number of whitespace-separated fields on the line; at most six are located
+	 */
+	private int split() {
+		int n = 0;
+		int i = 0;
+		while(i < lineLength) {
+			while(i < lineLength && isSpace(line[i]))
+				i++;
+			if(i == lineLength)
+				break;
+			int start = i;
+			while(i < lineLength && !isSpace(line[i]))
+				i++;
+			if(n < starts.length) {
+				starts[n] = start;
+				ends[n] = i;
+			}
+			n++;
+		}
+		return n;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+	}
+
+	private String field(int column) {
+		return new String(line, starts[column], ends[column] - starts[column], UTF8);
+	}
+
+	private String query() {
+		int start = starts[QUERY_COLUMN];
+		int length = ends[QUERY_COLUMN] - start;
+		if(query != null && length == queryBytes.length) {
+			boolean same = true;
+			for(int i=0; i<length && same; i++) {
+				same = (queryBytes[i] == line[start + i]);
+			}
+			if(same)
+				return query;
+		}
+		queryBytes = Arrays.copyOfRange(line, start, start + length);
+		return new String(queryBytes, UTF8);
+	}
+}
@@ -0,0 +1,239 @@
+package edu.gslis.filtering.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import lemurproject.indri.QueryEnvironment;
+import lemurproject.indri.ScoredExtentResult;
+import edu.gslis.docscoring.Scorer;
+import edu.gslis.eval.Qrels;
+import edu.gslis.filtering.threshold.SimpleCutoffThresholdClassifier;
+import edu.gslis.filtering.threshold.ThresholdClassifier;
+import edu.gslis.filtering.threshold.ThresholdFinder;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.searchhits.SearchHitsBatch;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Trains and filters many topics in a single pass over each index.
+ *
+ * SimpleFilterSessionImpl accumulates every topic separately, so a constraint or query term
+ * shared by several topics is evaluated once per topic.  Here each distinct constraint and each
+ * distinct query term is evaluated once, the union of candidate documents is walked in
+ * chronological order, and each candidate is scored by every topic whose constraint it matched.
+ *
+ * As with ResultAccumulatorNew, each topic's scorer sees a hit whose vector holds only that
+ * topic's query terms, counted with the same #band(term) expression, so Indri stems a term the
+ * way it does for the per-topic session and both score a document identically.
+ */
+public class SharedScanFilterSession {
+
+	private IndexWrapperIndriImpl trainIndex;
+	private IndexWrapperIndriImpl testIndex;
+	private Qrels trainQrels;
+	private ThresholdFinder optimizer;
+	private List<Topic> topics;
+
+	private static class Topic {
+		GQuery query;
+		Scorer scorer;
+		ThresholdClassifier thresholder;
+	}
+
+	public SharedScanFilterSession(IndexWrapperIndriImpl trainIndex,
+			IndexWrapperIndriImpl testIndex,
+			Qrels trainQrels,
+			ThresholdFinder optimizer) {
+
+		this.trainIndex = trainIndex;
+		this.testIndex  = testIndex;
+		this.trainQrels = trainQrels;
+		this.optimizer = optimizer;
+		this.topics = new ArrayList<Topic>();
+	}
+
+	/**
+	 * @param query topic, with its constraint in the FilterSession.NAME_OF_CONSTRAINT_FIELD metadata
+	 * @param scorer a scorer already set up for this topic alone
+	 */
+	public void addTopic(GQuery query, Scorer scorer) {
+		Topic topic = new Topic();
+		topic.query = query;
+		topic.scorer = scorer;
+		topics.add(topic);
+	}
+
+	public void train() {
+		SearchHitsBatch trainingHits = scan(trainIndex, false);
+		for(Topic topic : topics) {
+			optimizer.init(topic.query.getTitle(), trainingHits.getSearchHits(topic.query), trainQrels);
+			topic.thresholder = new SimpleCutoffThresholdClassifier();
+			((SimpleCutoffThresholdClassifier)topic.thresholder).setThreshold(optimizer.getThreshold());
+		}
+	}
+
+	/**
+	 * @return emitted documents for every topic, keyed by query title, in chronological order
+	 */
+	public SearchHitsBatch filter() {
+		SearchHitsBatch emitted = scan(testIndex, true);
+		for(Topic topic : topics) {
+			System.err.println(topic.query.getTitle() + "   emitted: " +
+					emitted.getSearchHits(topic.query).size() + " cutoff: " +
+					topic.thresholder.getThreshold());
+		}
+		return emitted;
+	}
+
+	/**
+	 * @param index index to scan
+	 * @param emitOnly if true keep only hits each topic's thresholder emits, else keep all scored hits
+	 */
+	private SearchHitsBatch scan(IndexWrapperIndriImpl index, boolean emitOnly) {
+		SearchHitsBatch results = new SearchHitsBatch();
+		for(Topic topic : topics) {
+			results.setSearchHits(topic.query, new SearchHits());
+		}
+
+		QueryEnvironment env = (QueryEnvironment)index.getActualIndex();
+		try {
+			Map<Integer,List<Topic>> docTopics = candidates(env);
+			if(docTopics.isEmpty())
+				return results;
+			Map<String,Map<Integer,Integer>> termCounts = termCounts(env, docTopics);
+
+			// put the union of candidates in chronological order
+			int[] docIDs = new int[docTopics.size()];
+			int k=0;
+			for(int docID : docTopics.keySet()) {
+				docIDs[k++] = docID;
+			}
+			Arrays.sort(docIDs);
+			String[] docnos = env.documentMetadata(docIDs, "docno");
+			String[] epochStrings = env.documentMetadata(docIDs, "epoch");
+			final double[] epochs = new double[docIDs.length];
+			Integer[] order = new Integer[docIDs.length];
+			for(int i=0; i<docIDs.length; i++) {
+				epochs[i] = Double.parseDouble(epochStrings[i]);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer x, Integer y) {
+					return Double.compare(epochs[x], epochs[y]);
+				}
+			});
+
+			for(int j : order) {
+				double length = (double)env.documentLength(docIDs[j]);
+				for(Topic topic : docTopics.get(docIDs[j])) {
+					SearchHit hit = new SearchHit();
+					hit.setDocID(docIDs[j]);
+					hit.setDocno(docnos[j]);
+					hit.setLength(length);
+					hit.setEpoch(epochs[j]);
+					hit.setFeatureVector(queryTermCounts(topic.query, docIDs[j], termCounts));
+
+					double score = topic.scorer.score(hit);
+					hit.setScore(score);
+
+					if(emitOnly && !Double.isInfinite(topic.thresholder.getThreshold()) &&
+							!topic.thresholder.emit(score))
+						continue;
+					results.getSearchHits(topic.query).add(hit);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return results;
+	}
+
+	/**
+	 * Evaluates each distinct constraint once.
+	 * @return map of candidate docID to the topics whose constraint it matched
+	 */
+	private Map<Integer,List<Topic>> candidates(QueryEnvironment env) throws Exception {
+		Map<String,List<Topic>> topicsByConstraint = new HashMap<String,List<Topic>>();
+		for(Topic topic : topics) {
+			String constraint = topic.query.getMetadata(FilterSession.NAME_OF_CONSTRAINT_FIELD);
+			List<Topic> sharing = topicsByConstraint.get(constraint);
+			if(sharing == null) {
+				sharing = new ArrayList<Topic>();
+				topicsByConstraint.put(constraint, sharing);
+			}
+			sharing.add(topic);
+		}
+
+		Map<Integer,List<Topic>> docTopics = new HashMap<Integer,List<Topic>>();
+		Iterator<String> constraints = topicsByConstraint.keySet().iterator();
+		while(constraints.hasNext()) {
+			String constraint = constraints.next();
+			List<Topic> sharing = topicsByConstraint.get(constraint);
+
+			ScoredExtentResult[] res = env.expressionList(constraint);
+			int previousDocID = -1;
+			for(ScoredExtentResult r : res) {
+				// extents arrive grouped by document
+				if(r.document == previousDocID)
+					continue;
+				previousDocID = r.document;
+
+				List<Topic> forDoc = docTopics.get(r.document);
+				if(forDoc == null) {
+					forDoc = new ArrayList<Topic>(sharing.size());
+					docTopics.put(r.document, forDoc);
+				}
+				if(!forDoc.containsAll(sharing))
+					forDoc.addAll(sharing);
+			}
+		}
+		return docTopics;
+	}
+
+	/**
+	 * Counts each distinct query term once, as ResultAccumulatorNew does, with #band(term).
+	 * @return map of term to its count in each candidate document containing it
+	 */
+	private Map<String,Map<Integer,Integer>> termCounts(QueryEnvironment env,
+			Map<Integer,List<Topic>> docTopics) throws Exception {
+		Map<String,Map<Integer,Integer>> termCounts = new HashMap<String,Map<Integer,Integer>>();
+		for(Topic topic : topics) {
+			Iterator<String> terms = topic.query.getFeatureVector().iterator();
+			while(terms.hasNext()) {
+				String term = terms.next();
+				if(termCounts.containsKey(term))
+					continue;
+				Map<Integer,Integer> counts = new HashMap<Integer,Integer>();
+				for(ScoredExtentResult r : env.expressionList("#band(" + term + ")")) {
+					if(!docTopics.containsKey(r.document))
+						continue;
+					Integer count = counts.get(r.document);
+					counts.put(r.document, count == null ? 1 : count + 1);
+				}
+				termCounts.put(term, counts);
+			}
+		}
+		return termCounts;
+	}
+
+	private FeatureVector queryTermCounts(GQuery query, int docID,
+			Map<String,Map<Integer,Integer>> termCounts) {
+		FeatureVector counts = new FeatureVector(null);
+		Iterator<String> terms = query.getFeatureVector().iterator();
+		while(terms.hasNext()) {
+			String term = terms.next();
+			Integer count = termCounts.get(term).get(docID);
+			if(count != null)
+				counts.addTerm(term, count);
+		}
+		return counts;
+	}
+}
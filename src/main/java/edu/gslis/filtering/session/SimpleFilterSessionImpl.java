@@ -69,6 +69,13 @@ public class SimpleFilterSessionImpl implements FilterSession {
 		((SimpleCutoffThresholdClassifier)thresholder).setThreshold(optimizer.getThreshold());
 	}
 
+	/**
+	 * @return the cutoff learned by train()
+	 */
+	public ThresholdClassifier getThresholdClassifier() {
+		return thresholder;
+	}
+
 	public SearchHits filter() {
 		ResultAccumulatorNew accumulator = new ResultAccumulatorNew((IndexWrapperIndriImpl)testIndex, 
 				query.getFeatureVector(), query.getMetadata(NAME_OF_CONSTRAINT_FIELD));
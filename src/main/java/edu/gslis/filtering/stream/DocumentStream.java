@@ -0,0 +1,19 @@
+package edu.gslis.filtering.stream;
+
+import edu.gslis.searchhits.SearchHit;
+
+/**
+ * A source of documents that arrive one at a time in epoch order, e.g. an index walked
+ * chronologically or a live feed.  Each hit carries its docno, length, full document
+ * vector and an "epoch" metadata value.
+ */
+public interface DocumentStream {
+	public static final String EPOCH_FIELD = "epoch";
+
+	/**
+	 * @return the next document, or null once the stream is exhausted
+	 */
+	public SearchHit next();
+
+	public void close();
+}
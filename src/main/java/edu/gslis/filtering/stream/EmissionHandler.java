@@ -0,0 +1,14 @@
+package edu.gslis.filtering.stream;
+
+import edu.gslis.searchhits.SearchHit;
+
+/**
+ * Receives documents as a filter decides to emit them.  The hit is only valid for the
+ * duration of the call; its score is the emitting topic's score.
+ */
+public interface EmissionHandler {
+
+	public void emit(String queryName, SearchHit hit);
+
+	public void close();
+}
@@ -0,0 +1,134 @@
+package edu.gslis.filtering.stream;
+
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+import lemurproject.indri.DocumentVector;
+import lemurproject.indri.QueryEnvironment;
+
+/**
+ * Streams every document in an Indri index in docID order, fetching docnos, epochs and
+ * vectors for a batch of documents at a time.
+ *
+ * Indri assigns docIDs in the order documents were indexed, so this is epoch order for
+ * collections built chronologically.  Small local disorder can be absorbed by a reorder
+ * window: the stream holds that many documents and always releases the earliest one.
+ * Memory is bounded by the batch size plus the window, never by the size of the index.
+ */
+public class IndriDocumentStream implements DocumentStream {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private QueryEnvironment env;
+	private Stopper stopper;
+	private String timeFieldName = EPOCH_FIELD;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int reorderWindow = 0;
+
+	private int nextDocID = 1;
+	private int maxDocID;
+	private Queue<SearchHit> batch = new LinkedList<SearchHit>();
+	private PriorityQueue<SearchHit> window;
+	private double lastEpoch = Double.NEGATIVE_INFINITY;
+	private boolean warnedOutOfOrder = false;
+
+	// inner class for ordering hits on time
+	private class EpochComparator implements Comparator<SearchHit> {
+		public int compare(SearchHit x, SearchHit y) {
+			return Double.compare(x.getEpoch(), y.getEpoch());
+		}
+	}
+
+	public IndriDocumentStream(IndexWrapperIndriImpl index, Stopper stopper) {
+		this.env = (QueryEnvironment)index.getActualIndex();
+		this.stopper = stopper;
+		this.maxDocID = (int)index.docCount();
+		this.window = new PriorityQueue<SearchHit>(11, new EpochComparator());
+	}
+
+	public void setTimeFieldName(String timeFieldName) {
+		this.timeFieldName = timeFieldName;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param reorderWindow number of documents held back so that slightly out-of-order
+	 *        epochs are released in order.  0 streams in docID order.
+	 */
+	public void setReorderWindow(int reorderWindow) {
+		this.reorderWindow = reorderWindow;
+	}
+
+	public SearchHit next() {
+		while(window.size() <= reorderWindow) {
+			if(batch.isEmpty() && !fetchBatch())
+				break;
+			window.add(batch.poll());
+		}
+		SearchHit hit = window.poll();
+		if(hit == null)
+			return null;
+
+		double epoch = hit.getEpoch();
+		if(epoch < lastEpoch && !warnedOutOfOrder) {
+			System.err.println("IndriDocumentStream: index is not in epoch order at " + hit.getDocno() +
+					"; consider a larger reorder window.");
+			warnedOutOfOrder = true;
+		}
+		lastEpoch = Math.max(lastEpoch, epoch);
+		return hit;
+	}
+
+	private boolean fetchBatch() {
+		if(nextDocID > maxDocID)
+			return false;
+
+		int n = Math.min(batchSize, maxDocID - nextDocID + 1);
+		int[] docIDs = new int[n];
+		for(int i=0; i<n; i++) {
+			docIDs[i] = nextDocID++;
+		}
+		try {
+			String[] docnos = env.documentMetadata(docIDs, "docno");
+			String[] epochs = env.documentMetadata(docIDs, timeFieldName);
+			DocumentVector[] dvs = env.documentVectors(docIDs);
+			for(int i=0; i<n; i++) {
+				SearchHit hit = new SearchHit();
+				hit.setDocID(docIDs[i]);
+				hit.setDocno(docnos[i]);
+				hit.setLength(dvs[i].positions.length);
+				hit.setFeatureVector(toFeatureVector(dvs[i]));
+				hit.setEpoch(Double.parseDouble(epochs[i]));
+				batch.add(hit);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	private FeatureVector toFeatureVector(DocumentVector dv) {
+		FeatureVector features = new FeatureVector(stopper);
+		for(int position : dv.positions) {
+			String tok = dv.stems[position];
+			if(tok.equals("[OOV]"))
+				continue;
+			features.addTerm(tok, 1.0);
+		}
+		return features;
+	}
+
+	public void close() {
+		batch.clear();
+		window.clear();
+	}
+}
@@ -0,0 +1,143 @@
+package edu.gslis.filtering.stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.gslis.docscoring.QueryDocScorer;
+import edu.gslis.docscoring.support.IncrementalCollectionStats;
+import edu.gslis.eval.Qrels;
+import edu.gslis.filtering.threshold.AdaptiveThresholdClassifier;
+import edu.gslis.filtering.threshold.ThresholdClassifier;
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Simulates filtering over a time-ordered stream.
+ *
+ * Each document is read once.  It is added to the running background statistics, then
+ * scored by every topic that shares at least one term with it, and emitted or not on
+ * arrival.  No topic holds on to documents: per-topic state is a scorer, a threshold and
+ * a few counters.  If feedback qrels are set, each emission is judged immediately and
+ * adaptive thresholds are updated, as in the TREC filtering track.
+ *
+ * Topic constraints written in the Indri query language are not evaluated here.  A
+ * document is a candidate for a topic whenever it contains one of the topic's terms.
+ */
+public class StreamingFilter {
+
+	private IncrementalCollectionStats stats;
+	private EmissionHandler handler;
+	private Qrels feedbackQrels;
+
+	private List<Topic> topics;
+	private Map<String,List<Topic>> topicsByTerm;
+	private long docsProcessed = 0;
+
+	private static class Topic {
+		GQuery query;
+		QueryDocScorer scorer;
+		ThresholdClassifier thresholder;
+		long lastSeen = -1;
+		long candidates = 0;
+		long emitted = 0;
+	}
+
+	public StreamingFilter(IncrementalCollectionStats stats, EmissionHandler handler) {
+		this.stats = stats;
+		this.handler = handler;
+		this.topics = new ArrayList<Topic>();
+		this.topicsByTerm = new HashMap<String,List<Topic>>();
+	}
+
+	/**
+	 * Judgments used to simulate immediate feedback on emitted documents.
+	 * @param feedbackQrels qrels for the stream period
+	 */
+	public void setFeedback(Qrels feedbackQrels) {
+		this.feedbackQrels = feedbackQrels;
+	}
+
+	/**
+	 * Register a topic.  The scorer should already be configured to read its background
+	 * statistics from this filter's IncrementalCollectionStats.
+	 * @param query topic
+	 * @param scorer scorer for this topic alone
+	 * @param thresholder cutoff for this topic alone
+	 */
+	public void addTopic(GQuery query, QueryDocScorer scorer, ThresholdClassifier thresholder) {
+		Topic topic = new Topic();
+		topic.query = query;
+		topic.scorer = scorer;
+		topic.thresholder = thresholder;
+
+		Iterator<String> terms = query.getFeatureVector().iterator();
+		while(terms.hasNext()) {
+			String term = terms.next();
+			stats.track(term);
+			List<Topic> forTerm = topicsByTerm.get(term);
+			if(forTerm == null) {
+				forTerm = new ArrayList<Topic>();
+				topicsByTerm.put(term, forTerm);
+			}
+			forTerm.add(topic);
+		}
+		// set after tracking so scorers that precompute query weights see the stats
+		scorer.setQuery(query);
+		topics.add(topic);
+	}
+
+	/**
+	 * Consume the stream to the end.
+	 * @param stream documents in epoch order
+	 */
+	public void run(DocumentStream stream) {
+		List<Topic> candidates = new ArrayList<Topic>();
+		SearchHit hit;
+		while((hit = stream.next()) != null) {
+			FeatureVector docVector = hit.getFeatureVector();
+			stats.add(docVector, hit.getLength());
+
+			candidates.clear();
+			Iterator<String> terms = docVector.iterator();
+			while(terms.hasNext()) {
+				List<Topic> forTerm = topicsByTerm.get(terms.next());
+				if(forTerm == null)
+					continue;
+				for(Topic topic : forTerm) {
+					if(topic.lastSeen != docsProcessed) {
+						topic.lastSeen = docsProcessed;
+						candidates.add(topic);
+					}
+				}
+			}
+
+			for(Topic topic : candidates) {
+				topic.candidates++;
+				double score = topic.scorer.score(hit);
+				if(!topic.thresholder.emit(score))
+					continue;
+
+				topic.emitted++;
+				hit.setScore(score);
+				handler.emit(topic.query.getTitle(), hit);
+
+				if(feedbackQrels != null && topic.thresholder instanceof AdaptiveThresholdClassifier) {
+					boolean relevant = feedbackQrels.isRel(topic.query.getTitle(), hit.getDocno());
+					((AdaptiveThresholdClassifier)topic.thresholder).update(score, relevant);
+				}
+			}
+			docsProcessed++;
+		}
+		stream.close();
+
+		for(Topic topic : topics) {
+			System.err.println(topic.query.getTitle() + "   candidates: " + topic.candidates +
+					"   emitted: " + topic.emitted + " cutoff: " + topic.thresholder.getThreshold());
+		}
+		System.err.println("processed " + docsProcessed + " documents.");
+	}
+}
@@ -0,0 +1,42 @@
+package edu.gslis.filtering.threshold;
+
+/**
+ * A cutoff that adapts to relevance feedback on the documents it emits.
+ *
+ * Only running means and counts are kept.  Once both relevant and non-relevant emissions
+ * have been seen, the threshold sits midway between their mean scores.  Until then, a
+ * non-relevant emission can only raise the threshold, never lower it.
+ */
+public class AdaptiveThresholdClassifier extends ThresholdClassifier {
+
+	private long relCount = 0;
+	private long nonRelCount = 0;
+	private double relMean = 0.0;
+	private double nonRelMean = 0.0;
+
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Record a judgment for an emitted document.
+	 * @param score the score the document was emitted with
+	 * @param relevant whether it turned out to be relevant
+	 */
+	public void update(double score, boolean relevant) {
+		if(relevant) {
+			relCount++;
+			relMean += (score - relMean) / relCount;
+		} else {
+			nonRelCount++;
+			nonRelMean += (score - nonRelMean) / nonRelCount;
+		}
+
+		if(relCount > 0 && nonRelCount > 0) {
+			if(relMean > nonRelMean)
+				threshold = (relMean + nonRelMean) / 2.0;
+		} else if(nonRelCount > 0) {
+			threshold = Math.max(threshold, nonRelMean);
+		}
+	}
+}
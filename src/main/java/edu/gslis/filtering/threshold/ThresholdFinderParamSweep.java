@@ -1,35 +1,52 @@
 package edu.gslis.filtering.threshold;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 
 
-import edu.gslis.eval.FilterEvaluation;
 import edu.gslis.eval.Qrels;
+import edu.gslis.filtering.threshold.ThresholdObjectives.ThresholdObjective;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
 
 
-
+/**
+ * Finds the threshold that maximizes a set-based objective (F1 by default) on training hits.
+ *
+ * Hits are sorted by score once and judged once.  Every distinct cutoff is then evaluated
+ * from running counts of relevant and retrieved documents, so the result is the exact optimum
+ * over all cutoffs.  The returned threshold lies halfway between the lowest retrieved score and
+ * the next score down, so it separates the same documents whether compared with > or >=.  Ties
+ * go to the lower threshold.
+ */
 public class ThresholdFinderParamSweep extends ThresholdFinder{
-	public static final String STAT_TO_OPTIMIZE = "f1";
-	public static final double DELTA = 0.05;
+	public static final String STAT_TO_OPTIMIZE = ThresholdObjectives.F1;
 	private double threshold = Double.NEGATIVE_INFINITY;
-	private double lowerBound = Double.NEGATIVE_INFINITY;
-	private double upperBound = Double.POSITIVE_INFINITY;
 	
 	private String queryName;
 	private SearchHits resultsForQuery;
-	private FilterEvaluation evaluation;
+	private Qrels qrels;
+	private ThresholdObjective objective;
 	private double bestObservedPerformance = 0.0;
 	
 	
+	public ThresholdFinderParamSweep() {
+		try {
+			objective = ThresholdObjectives.getObjective(STAT_TO_OPTIMIZE);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void setObjective(ThresholdObjective objective) {
+		this.objective = objective;
+	}
 
 	public void init(String queryName, SearchHits resultsForQuery, Qrels qrels) {
 		this.queryName = queryName;
 		this.resultsForQuery = resultsForQuery;
-		this.evaluation = new FilterEvaluation(qrels);
-		evaluation.setResults(resultsForQuery);
+		this.qrels = qrels;
 	}
 	
 	@Override
@@ -40,66 +57,60 @@ public class ThresholdFinderParamSweep extends ThresholdFinder{
 
 	
 	private void optimize() {
-		lowerBound = this.minOrMax(resultsForQuery, true);
-		upperBound = this.minOrMax(resultsForQuery, false);
-		threshold = optimizeF(lowerBound, upperBound);		
-	}
-	
-	private double optimizeF(double lowerBound, double upperBound) {
-		double bestScore = Double.NEGATIVE_INFINITY;
-		double bestThreshold = lowerBound;
-		double workingThreshold = lowerBound;
-		while(workingThreshold < upperBound) {
-			SearchHits culledHits = cullHits(resultsForQuery, workingThreshold);
-			evaluation.setResults(culledHits);
-			double observedScore = evaluation.f1Query(queryName);
-			if(observedScore > bestScore) {
-				bestScore = observedScore;
-				bestThreshold = workingThreshold;
-			}
-			workingThreshold += DELTA;
-		}
-		bestObservedPerformance = bestScore;
-		return bestThreshold;
-	}
-	
-	private SearchHits cullHits(SearchHits hits, double cutoff) {
-		SearchHits culledHits = new SearchHits();
-		Iterator<SearchHit> hitIterator = hits.iterator();
-		while(hitIterator.hasNext()) {
-			SearchHit hit = hitIterator.next();
-			if(hit.getScore() >= cutoff) 
-				culledHits.add(hit);
+		int n = resultsForQuery.size();
+		if(n < 1) {
+			threshold = Double.NEGATIVE_INFINITY;
+			bestObservedPerformance = 0.0;
+			return;
 		}
-		return culledHits;
-	}
-	
-	
 
-	
-	private double[] extractRsvs(SearchHits hits) {
-		double[] rsvs = new double[hits.size()];
+		// judge each hit once, then order by descending score
+		final double[] scores = new double[n];
+		boolean[] rel = new boolean[n];
+		Integer[] order = new Integer[n];
 		int k=0;
-		Iterator<SearchHit> hitIterator = hits.iterator();
+		Iterator<SearchHit> hitIterator = resultsForQuery.iterator();
 		while(hitIterator.hasNext()) {
 			SearchHit hit = hitIterator.next();
-			rsvs[k++] = hit.getScore();
+			scores[k] = hit.getScore();
+			rel[k] = qrels.isRel(queryName, hit.getDocno());
+			order[k] = k;
+			k++;
 		}
-		return rsvs;
-	}
-	
-	private double minOrMax(SearchHits hits, boolean getMin) {
-		double[] rsvs = this.extractRsvs(hits);
-		Arrays.sort(rsvs);
-		if(rsvs.length<1)
-			return Double.NEGATIVE_INFINITY;
-		if(getMin)
-			return rsvs[0];
-		return rsvs[rsvs.length-1];
-	}
-	
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return Double.compare(scores[y], scores[x]);
+			}
+		});
 
+		double numRel = qrels.numRel(queryName);
 
+		// retrieve nothing
+		double bestScore = objective.evaluate(0.0, 0.0, numRel);
+		double bestThreshold = Math.nextUp(scores[order[0]]);
+
+		double relRet = 0.0;
+		double ret = 0.0;
+		int i=0;
+		while(i < n) {
+			double score = scores[order[i]];
+			// take every hit tied at this score
+			while(i < n && scores[order[i]] == score) {
+				if(rel[order[i]])
+					relRet += 1.0;
+				ret += 1.0;
+				i++;
+			}
+			double observedScore = objective.evaluate(relRet, ret, numRel);
+			if(observedScore >= bestScore) {
+				bestScore = observedScore;
+				bestThreshold = (i < n) ? (score + scores[order[i]]) / 2.0 : Double.NEGATIVE_INFINITY;
+			}
+		}
+		bestObservedPerformance = bestScore;
+		threshold = bestThreshold;
+	}
+	
 
 	
 	public double getBestPerformance() {
@@ -0,0 +1,79 @@
+package edu.gslis.filtering.threshold;
+
+/**
+ * Set-based measures a threshold can be optimized for.  Each is computed from the counts
+ * at a cutoff, so a sweep over sorted scores can evaluate every cutoff in constant time.
+ * Definitions follow FilterEvaluation.
+ *
+ *  f1        F1 (FilterEvaluation.f1Query)
+ *  t11su     TREC-11 scaled utility (FilterEvaluation.t11su)
+ *  utility   2 * relRet - nonRelRet, floored at -100 (FilterEvaluation.utility)
+ */
+public class ThresholdObjectives {
+
+	public static final String F1 = "f1";
+	public static final String T11SU = "t11su";
+	public static final String UTILITY = "utility";
+
+	public static ThresholdObjective getObjective(String name) throws Exception {
+		if (name.equals(F1))
+			return new ThresholdObjectives().new FBetaObjective(1.0);
+		else if (name.equals(T11SU))
+			return new ThresholdObjectives().new T11SUObjective();
+		else if (name.equals(UTILITY))
+			return new ThresholdObjectives().new UtilityObjective(2.0);
+		else
+			throw new Exception("Unsupported threshold objective '" + name + "'");
+	}
+
+	// Simple interface for objectives
+	public interface ThresholdObjective {
+		/**
+		 * @param relRet relevant documents at or above the cutoff
+		 * @param ret documents at or above the cutoff
+		 * @param numRel relevant documents for the query
+		 * @return the measure at this cutoff; larger is better
+		 */
+		public double evaluate(double relRet, double ret, double numRel);
+	}
+
+	public class FBetaObjective implements ThresholdObjective {
+		private double betaSquared;
+
+		public FBetaObjective(double beta) {
+			this.betaSquared = beta * beta;
+		}
+		public double evaluate(double relRet, double ret, double numRel) {
+			if(relRet == 0.0)
+				return 0.0;
+			double precision = relRet / ret;
+			double recall    = relRet / numRel;
+			double f = (1 + betaSquared) * (precision * recall) / (betaSquared * precision + recall);
+			return Double.isNaN(f) ? 0.0 : f;
+		}
+	}
+
+	public class T11SUObjective implements ThresholdObjective {
+		private static final double MIN_U = 0.5;
+
+		public double evaluate(double relRet, double ret, double numRel) {
+			double falsePos = ret - relRet;
+			double t = (2.0 * relRet - falsePos) / numRel;
+			if(Double.isNaN(t))
+				t = 0.0;
+			return (Math.max(t, MIN_U) - MIN_U) / (1.0 - MIN_U);
+		}
+	}
+
+	public class UtilityObjective implements ThresholdObjective {
+		private double truePosWeight;
+
+		public UtilityObjective(double truePosWeight) {
+			this.truePosWeight = truePosWeight;
+		}
+		public double evaluate(double relRet, double ret, double numRel) {
+			double falsePos = ret - relRet;
+			return Math.max(-100, truePosWeight * relRet - falsePos);
+		}
+	}
+}
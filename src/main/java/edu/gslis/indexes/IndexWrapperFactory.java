@@ -10,11 +10,19 @@ import java.io.File;
 public class IndexWrapperFactory {
 
     public static IndexWrapper getIndexWrapper(String path) 
+    {
+        return getIndexWrapper(path, 1);
+    }
+    
+    /**
+     * @param poolSize for Indri, the number of QueryEnvironments runQuery may use concurrently
+     */
+    public static IndexWrapper getIndexWrapper(String path, int poolSize) 
     {
         File manifest = new File(path + File.separator + "manifest");
         
         if (manifest.exists()) {
-            return new IndexWrapperIndriImpl(path);
+            return new IndexWrapperIndriImpl(path, poolSize);
         }
         else {
             return new IndexWrapperLuceneImpl(path);
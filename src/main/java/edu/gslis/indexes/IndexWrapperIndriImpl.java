@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.gslis.docaccumulators.Postings;
 import edu.gslis.docaccumulators.PostingsAggregator;
@@ -27,33 +29,68 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
     private static final String SERVER_PREFIX = "server:";
     
 	private QueryEnvironment index;
+	private QueryEnvironmentPool pool;
+	private String pathToIndex;
 	private double vocabularySize = -1.0;
 	private double docLengthAvg   = -1.0;
 	private String timeFieldName  = null;
+	private Map<String,Integer> docIdCache = new ConcurrentHashMap<String,Integer>();
 	
 	private String defaultScoringRule = "method:dirichlet,mu:2500";
 	
 	public IndexWrapperIndriImpl(String pathToIndex) {
+		this(pathToIndex, 1);
+	}
+	
+	/**
+	 * @param pathToIndex path to the index, or server:host:port
+	 * @param poolSize number of QueryEnvironments runQuery() may use concurrently.  These are
+	 *        opened in addition to the wrapper's own environment, which every other method
+	 *        uses.  With a poolSize of 1 or less no pool is opened, and runQuery() takes turns
+	 *        on the wrapper's own environment.
+	 */
+	public IndexWrapperIndriImpl(String pathToIndex, int poolSize) {
+		this.pathToIndex = pathToIndex;
 		index = new QueryEnvironment();
-		addIndex(pathToIndex);
+		addIndex(index, pathToIndex);
 		getVocabularySize(pathToIndex);
+		
+		pool = new QueryEnvironmentPool();
+		if(poolSize > 1) {
+			for(int i=0; i<poolSize; i++) {
+				pool.add(openEnvironment(), true);
+			}
+		}
 	}
 	
 
-	private void addIndex(String pathToIndex) {
+	private void addIndex(QueryEnvironment env, String pathToIndex) {
 		try {
 		    // If the index path starts with 'server:', treat it as a server
 		    if (pathToIndex.startsWith(SERVER_PREFIX)) {
 		        String server = pathToIndex.substring(SERVER_PREFIX.length());
-		        index.addServer(server);
+		        env.addServer(server);
 		    }
 		    else
-		        index.addIndex(pathToIndex);
+		        env.addIndex(pathToIndex);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Opens an additional QueryEnvironment on the same index (or server) as this wrapper.
+	 * Indri's native handles are not safe to share across threads, so callers that want
+	 * to query concurrently need one environment per thread.  The caller is responsible 
+	 * for closing the returned environment.
+	 * @return a new QueryEnvironment over this wrapper's index
+	 */
+	public QueryEnvironment openEnvironment() {
+		QueryEnvironment env = new QueryEnvironment();
+		addIndex(env, pathToIndex);
+		return env;
+	}
+	
 	   /**
      * Initialize the vocabulary size using the lemur API
      * @param pathToIndex
@@ -88,42 +125,19 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 			}
 			queryString.append(")");
 			
-            ScoredExtentResult[] res = null;
-            double[] times = null;
-            String[] docnos = null;
-			synchronized(this) {
-				index.setScoringRules(new String[] {scoringRule});
-				res = index.runQuery(queryString.toString(), count);
-				docnos = index.documentMetadata(res, "docno");
-				String[] timeStrings  = null;
-				times = null;
-				if(timeFieldName != null) {
-					timeStrings = index.documentMetadata(res, timeFieldName);
-					times = new double[timeStrings.length];
-					for(int i=0; i<timeStrings.length; i++) {
-						times[i] = Double.parseDouble(timeStrings[i]);
-					}
+			if(pool.size() == 0) {
+				synchronized(this) {
+					index.setScoringRules(new String[] {scoringRule});
+					hits = runQuery(index, queryString.toString(), count, true);
 				}
-			}
-
-			int k=0;
-			for(ScoredExtentResult r : res) {
-				SearchHit hit = new SearchHit();
-				hit.setDocID(r.document);
-				hit.setScore(r.score);
-				if(times != null)  {
-					hit.setMetadataValue(timeFieldName, times[k]);
+			} else {
+				QueryEnvironment env = pool.checkout();
+				try {
+					pool.setScoringRule(env, scoringRule);
+					hits = runQuery(env, queryString.toString(), count, true);
+				} finally {
+					pool.release(env);
 				}
-                double length = (double)index.documentLength(r.document);
-                
-                // TODO: This is inefficient if you don't need the document vector for rescoring
-                IndriDocument doc = new IndriDocument (index);
-                FeatureVector fv = doc.getFeatureVector(r.document, null);
-                hit.setFeatureVector(fv);
-                
-                hit.setLength(length);
-				hit.setDocno(docnos[k++]);
-				hits.add(hit);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -134,34 +148,19 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 	public SearchHits runQuery(String query, int count) {
 		SearchHits hits = new SearchHits();
 		try {
-			// assumes that this gQuery's text member is all formatted and ready to go.
-			ScoredExtentResult[] res = index.runQuery(query, count);
-			String[] docnos = index.documentMetadata(res, "docno");
-			String[] timeStrings  = null;
-			double[] times = null;
-			if(timeFieldName != null) {
-				timeStrings = index.documentMetadata(res, timeFieldName);
-				times = new double[timeStrings.length];
-				for(int i=0; i<timeStrings.length; i++) {
-					times[i] = Double.parseDouble(timeStrings[i]);
+			if(pool.size() == 0) {
+				synchronized(this) {
+					index.setScoringRules(new String[] {defaultScoringRule});
+					hits = runQuery(index, query, count, false);
 				}
-			}
-
-
-			int k=0;
-			for(ScoredExtentResult r : res) {
-				SearchHit hit = new SearchHit();
-				hit.setDocID(r.document);
-				hit.setScore(r.score);
-
-				if(times != null)  {
-					hit.setMetadataValue(timeFieldName, times[k]);
+			} else {
+				QueryEnvironment env = pool.checkout();
+				try {
+					pool.setScoringRule(env, defaultScoringRule);
+					hits = runQuery(env, query, count, false);
+				} finally {
+					pool.release(env);
 				}
-                double length = (double)index.documentLength(r.document);
-                hit.setLength(length);
-
-				hit.setDocno(docnos[k++]);
-				hits.add(hit);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -169,6 +168,47 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 		return hits;
 	}
 	
+	/**
+	 * Runs a query on an environment the caller has exclusive use of.
+	 * @param withVectors whether to load each hit's document vector
+	 */
+	private SearchHits runQuery(QueryEnvironment env, String query, int count, boolean withVectors) throws Exception {
+		SearchHits hits = new SearchHits();
+		ScoredExtentResult[] res = env.runQuery(query, count);
+		String[] docnos = env.documentMetadata(res, "docno");
+		double[] times = null;
+		if(timeFieldName != null) {
+			String[] timeStrings = env.documentMetadata(res, timeFieldName);
+			times = new double[timeStrings.length];
+			for(int i=0; i<timeStrings.length; i++) {
+				times[i] = Double.parseDouble(timeStrings[i]);
+			}
+		}
+
+		int k=0;
+		for(ScoredExtentResult r : res) {
+			SearchHit hit = new SearchHit();
+			hit.setDocID(r.document);
+			hit.setScore(r.score);
+			if(times != null)  {
+				hit.setMetadataValue(timeFieldName, times[k]);
+			}
+            double length = (double)env.documentLength(r.document);
+            
+            if(withVectors) {
+                // TODO: This is inefficient if you don't need the document vector for rescoring
+                IndriDocument doc = new IndriDocument (env);
+                FeatureVector fv = doc.getFeatureVector(r.document, null);
+                hit.setFeatureVector(fv);
+            }
+            
+            hit.setLength(length);
+			hit.setDocno(docnos[k++]);
+			hits.add(hit);
+		}
+		return hits;
+	}
+	
 	public void setTimeFieldName(String timeFieldName) {
 		System.err.println("setting time to " + timeFieldName);
 		this.timeFieldName = timeFieldName;
@@ -224,40 +264,88 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 	}
 
 	public FeatureVector getDocVector(String docno, Stopper stopper) {
-		IndriDocument doc = new IndriDocument(index);
-		int docID = 1;
-		try {
-			docID = doc.getDocID(docno);
-			if(docID < 1) {
-				System.err.println("no doc ID found for docno " + docno);
-				return null;
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
+		int docID = getDocId(docno);
+		if(docID < 1) {
+			System.err.println("no doc ID found for docno " + docno);
+			return null;
 		}
 		return this.getDocVector(docID, stopper);
 	}
 	
+	/**
+	 * Fetches the vectors for many documents with one documentVectors() call.
+	 * @param docIDs indri document IDs
+	 * @param stopper Stopper, or null
+	 * @return one vector per docID, in the same order
+	 */
+	public FeatureVector[] getDocVectors(int[] docIDs, Stopper stopper) {
+		IndriDocument doc = new IndriDocument(index);
+		return doc.getFeatureVectors(docIDs, stopper);
+	}
+	
+	/**
+	 * Fetches the vectors for many docnos, resolving the docnos in bulk first.
+	 * @param docnos document numbers
+	 * @param stopper Stopper, or null
+	 * @return one vector per docno, in the same order; null where the docno isn't in the index
+	 */
+	public FeatureVector[] getDocVectors(String[] docnos, Stopper stopper) {
+		int[] docIDs = getDocIds(docnos);
+		int[] found = foundDocIds(docIDs);
+		FeatureVector[] foundVectors = getDocVectors(found, stopper);
+		
+		FeatureVector[] vectors = new FeatureVector[docnos.length];
+		int k=0;
+		for(int i=0; i<docIDs.length; i++) {
+			if(docIDs[i] >= 1)
+				vectors[i] = foundVectors[k++];
+		}
+		return vectors;
+	}
 
 	public Object getActualIndex() {
 		return index;
 	}
+	
+	/**
+	 * @return the pool of QueryEnvironments used by runQuery(), empty unless the wrapper was
+	 *         opened with a poolSize above 1
+	 */
+	public QueryEnvironmentPool getEnvironmentPool() {
+		return pool;
+	}
 
 	public String getMetadataValue(String docno, String metadataName) {
-		String value = null;
-		String[] d = {docno};
+		return getMetadataValues(new String[] {docno}, metadataName)[0];
+	}
+	
+	/**
+	 * Looks up a metadata field for many docnos with one documentMetadata() call.
+	 * @param docnos document numbers
+	 * @param metadataName metadata field, e.g. epoch
+	 * @return one value per docno, in the same order; null where the docno isn't in the index
+	 */
+	public String[] getMetadataValues(String[] docnos, String metadataName) {
+		String[] values = new String[docnos.length];
+		int[] docIDs = getDocIds(docnos);
+		int[] found = foundDocIds(docIDs);
+		if(found.length == 0)
+			return values;
 		try {
-			int[] i    = index.documentIDsFromMetadata("docno", d);
-			String[] v = index.documentMetadata(i, metadataName);
-			if(v.length != d.length) {
-				System.err.println("got mismatch of metadata and docnos in IndexWrapperIndriImpl.getMetadataValue()");
-				return null;
+			String[] v = index.documentMetadata(found, metadataName);
+			if(v.length != found.length) {
+				System.err.println("got mismatch of metadata and docnos in IndexWrapperIndriImpl.getMetadataValues()");
+				return values;
+			}
+			int k=0;
+			for(int i=0; i<docIDs.length; i++) {
+				if(docIDs[i] >= 1)
+					values[i] = v[k++];
 			}
-			value = v[0];
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return value;
+		return values;
 	}
 
 	public double getDocLength(int docID) {
@@ -271,6 +359,55 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 	}
 
 	public int getDocId(String docno) {
+		return getDocIds(new String[] {docno})[0];
+	}
+	
+	/**
+	 * Resolves many docnos to indri document IDs.  Docnos seen before are answered from a cache;
+	 * the rest are resolved with a single documentIDsFromMetadata() call.
+	 * @param docnos document numbers
+	 * @return one ID per docno, in the same order; -1 where the docno isn't in the index
+	 */
+	public int[] getDocIds(String[] docnos) {
+		int[] docIDs = new int[docnos.length];
+		Set<String> uncached = new LinkedHashSet<String>();
+		for(int i=0; i<docnos.length; i++) {
+			Integer docID = docIdCache.get(docnos[i]);
+			if(docID == null) {
+				uncached.add(docnos[i]);
+			} else {
+				docIDs[i] = docID;
+			}
+		}
+		if(uncached.isEmpty())
+			return docIDs;
+		
+		String[] toResolve = uncached.toArray(new String[uncached.size()]);
+		int[] resolved = null;
+		try {
+			resolved = index.documentIDsFromMetadata("docno", toResolve);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		if(resolved != null && resolved.length == toResolve.length) {
+			for(int i=0; i<toResolve.length; i++) {
+				docIdCache.put(toResolve[i], resolved[i]);
+			}
+		} else {
+			// indri silently drops docnos it can't find, so we can't line the batch 
+			// back up with its input.  resolve these one at a time instead.
+			for(String docno : toResolve) {
+				docIdCache.put(docno, lookupDocId(docno));
+			}
+		}
+		
+		for(int i=0; i<docnos.length; i++) {
+			docIDs[i] = docIdCache.get(docnos[i]);
+		}
+		return docIDs;
+	}
+	
+	private int lookupDocId(String docno) {
 		try {
 			String[] d = {docno};
 			int[] docIds = index.documentIDsFromMetadata("docno", d);
@@ -284,6 +421,21 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 		return -1;
 	}
 	
+	private int[] foundDocIds(int[] docIDs) {
+		int n=0;
+		for(int docID : docIDs) {
+			if(docID >= 1)
+				n++;
+		}
+		int[] found = new int[n];
+		int k=0;
+		for(int docID : docIDs) {
+			if(docID >= 1)
+				found[k++] = docID;
+		}
+		return found;
+	}
+	
 	/**
 	 * Return a single SearchHit for the specified docno
 	 * @param docno Document nubmer
@@ -291,18 +443,41 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
 	 * @return SearchHit
 	 */
    public SearchHit getSearchHit(String docno, Stopper stopper) {
-       SearchHit hit = new SearchHit();
-       FeatureVector dv = getDocVector(docno, stopper);
-       int docid = getDocId(docno);
-       hit.setFeatureVector(dv);
-       hit.setDocID(docid);
-        
-       String timeString = getMetadataValue(docno, timeFieldName);
-       if (timeString != null) {
-           double time = Double.parseDouble(timeString);
-           hit.setMetadataValue(timeFieldName, time);
+       return getSearchHits(new String[] {docno}, stopper).getHit(0);
+   }
+   
+   /**
+    * Returns SearchHits for many docnos.  Docnos are resolved, and vectors and time metadata
+    * fetched, with one Indri call each rather than one per document.
+    * @param docnos Document numbers
+    * @param stopper Stopper object
+    * @return one hit per docno, in the same order
+    */
+   public SearchHits getSearchHits(String[] docnos, Stopper stopper) {
+       int[] docids = getDocIds(docnos);
+       FeatureVector[] dvs = getDocVectors(foundDocIds(docids), stopper);
+       String[] timeStrings = null;
+       if (timeFieldName != null)
+           timeStrings = getMetadataValues(docnos, timeFieldName);
+       
+       SearchHits hits = new SearchHits();
+       int k = 0;
+       for (int i=0; i<docnos.length; i++) {
+           SearchHit hit = new SearchHit();
+           hit.setDocno(docnos[i]);
+           hit.setDocID(docids[i]);
+           if (docids[i] >= 1)
+               hit.setFeatureVector(dvs[k++]);
+           else
+               hit.setFeatureVector(null);
+           
+           if (timeStrings != null && timeStrings[i] != null) {
+               double time = Double.parseDouble(timeStrings[i]);
+               hit.setMetadataValue(timeFieldName, time);
+           }
+           hits.add(hit);
        }
-       return hit;
+       return hits;
    }
    
    public String getDocText(int docid) {
@@ -318,6 +493,16 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
        return doc.getTerms(docid);
    }
    
+   /**
+    * Fetches the token sequences of many documents with one documentVectors() call.
+    * @param docids indri document IDs
+    * @return one list per docid, in the same order
+    */
+   public List<List<String>> getDocTerms(int[] docids) {
+       IndriDocument doc = new IndriDocument(index);
+       return doc.getTerms(docids);
+   }
+   
    public Map<Integer, Integer> getDocsByTerm(String term, Set<Integer> docids) {
        
        Map<Integer, Integer> df = new HashMap<Integer, Integer>();
@@ -489,6 +674,7 @@ public class IndexWrapperIndriImpl implements IndexWrapper{
     }
     
     public void close() {
+    	pool.close();
     	try {
 	    	index.close();
 	    	index.delete();
@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -83,7 +85,6 @@ public class IndexWrapperLuceneImpl implements IndexWrapper {
 	private String defaultScoringRule = "method:dirichlet,mu:2500";
 
 	IndexReader index;
-	IndexSearcher searcher;
 	Similarity similarity;
 	Analyzer analyzer;
 
@@ -100,7 +101,6 @@ public class IndexWrapperLuceneImpl implements IndexWrapper {
 		try {
 			Path path = FileSystems.getDefault().getPath(pathToIndex);
 			index = DirectoryReader.open(FSDirectory.open(path));
-			searcher = new IndexSearcher(index);
 
 			// Read the analyzer/similarity class from the index metadata,
 			// otherwise use defaults.
@@ -290,6 +290,8 @@ public class IndexWrapperLuceneImpl implements IndexWrapper {
 			QueryParser parser = new QueryParser("text", analyzer);
 			Query query = parser.parse(q);
 			//System.err.println(query.toString());
+			// a searcher per call, so concurrent queries with different rules keep their own similarity
+			IndexSearcher searcher = new IndexSearcher(index);
 			searcher.setSimilarity(similarity);
 			TopDocs topDocs = searcher.search(query, count);
 			ScoreDoc[] docs = topDocs.scoreDocs;
@@ -434,6 +436,42 @@ public class IndexWrapperLuceneImpl implements IndexWrapper {
 		return df;
 	}
 
+	/**
+	 * Returns document frequencies for many terms at once, summed over fields
+	 * as in docFreq(term). Fields are listed once and each field's terms are
+	 * looked up with a single enumerator, in sorted order.
+	 * 
+	 * @param terms
+	 *            Terms
+	 * @return Document frequency of each term
+	 */
+	public Map<String, Double> docFreqs(Collection<String> terms) {
+		List<String> sorted = new ArrayList<String>(terms);
+		Collections.sort(sorted);
+		Map<String, Double> dfs = new HashMap<String, Double>();
+		for (String term : sorted) {
+			dfs.put(term, 0.0);
+		}
+
+		try {
+			Fields fields = MultiFields.getFields(index);
+			Iterator<String> it = fields.iterator();
+			while (it.hasNext()) {
+				Terms fieldTerms = fields.terms(it.next());
+				if (fieldTerms == null)
+					continue;
+				TermsEnum termsEnum = fieldTerms.iterator();
+				for (String term : sorted) {
+					if (termsEnum.seekExact(new BytesRef(term)))
+						dfs.put(term, dfs.get(term) + termsEnum.docFreq());
+				}
+			}
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+		}
+		return dfs;
+	}
+
 	/**
 	 * Returns the number of documents containing the specified term in the
 	 * specified field.
@@ -754,6 +792,25 @@ public class IndexWrapperLuceneImpl implements IndexWrapper {
 		return index;
 	}
 
+	/**
+	 * Returns the analyzer queries are parsed with, the one the index was built with
+	 */
+	public Analyzer getAnalyzer() {
+		return analyzer;
+	}
+
+	/**
+	 * Closes the underlying Lucene IndexReader
+	 */
+	public void close() {
+		try {
+			index.close();
+		} catch (IOException e) {
+			System.err.println("Error closing index.");
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Returns the value of a specific field as a string
 	 * 
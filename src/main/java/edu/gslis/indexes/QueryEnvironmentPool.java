@@ -0,0 +1,109 @@
+package edu.gslis.indexes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import lemurproject.indri.QueryEnvironment;
+
+/**
+ * A fixed set of Indri QueryEnvironments opened on the same index (or server).
+ *
+ * A QueryEnvironment wraps a single native handle and can't be used by two threads at once,
+ * so concurrent callers check an environment out, use it, and release it.  The pool also
+ * remembers the scoring rule last set on each environment, so repeated queries with the same
+ * rule don't pay for setScoringRules() every time.
+ *
+ * Typical use:
+ * <pre>
+ *   QueryEnvironment env = pool.checkout();
+ *   try {
+ *       pool.setScoringRule(env, rule);
+ *       env.runQuery(...);
+ *   } finally {
+ *       pool.release(env);
+ *   }
+ * </pre>
+ */
+public class QueryEnvironmentPool {
+
+	private BlockingQueue<QueryEnvironment> available;
+	private List<QueryEnvironment> owned;
+	private Map<QueryEnvironment,String> scoringRules;
+	private int size = 0;
+
+	public QueryEnvironmentPool() {
+		available = new LinkedBlockingQueue<QueryEnvironment>();
+		owned = new ArrayList<QueryEnvironment>();
+		scoringRules = Collections.synchronizedMap(new IdentityHashMap<QueryEnvironment,String>());
+	}
+
+	/**
+	 * Add an environment to the pool.
+	 * @param env environment opened on the pool's index
+	 * @param closeWithPool whether close() should also close and delete this environment
+	 */
+	public synchronized void add(QueryEnvironment env, boolean closeWithPool) {
+		if(closeWithPool)
+			owned.add(env);
+		available.add(env);
+		size++;
+	}
+
+	/**
+	 * Blocks until an environment is free.
+	 * @return an environment for the exclusive use of the caller until release()
+	 */
+	public QueryEnvironment checkout() {
+		try {
+			return available.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for a query environment", e);
+		}
+	}
+
+	public void release(QueryEnvironment env) {
+		available.add(env);
+	}
+
+	/**
+	 * Sets the scoring rule on a checked-out environment, unless it's already in effect.
+	 * @param env environment obtained from checkout()
+	 * @param scoringRule Indri scoring rule, e.g. method:dirichlet,mu:2500
+	 * @throws Exception on Indri error
+	 */
+	public void setScoringRule(QueryEnvironment env, String scoringRule) throws Exception {
+		if(scoringRule.equals(scoringRules.get(env)))
+			return;
+		env.setScoringRules(new String[] {scoringRule});
+		scoringRules.put(env, scoringRule);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Closes the environments the pool was asked to own.  Must only be called once all
+	 * checked-out environments have been released.
+	 */
+	public synchronized void close() {
+		for(QueryEnvironment env : owned) {
+			try {
+				env.close();
+				env.delete();
+			} catch (Exception e) {
+				System.err.println("Error closing query environment.");
+			}
+		}
+		owned.clear();
+		available.clear();
+		scoringRules.clear();
+		size = 0;
+	}
+}
@@ -2,13 +2,20 @@ package edu.gslis.lucene.expansion;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.indexes.IndexWrapperLuceneImpl;
 import edu.gslis.queries.GQuery;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
 import edu.gslis.textrepresentation.FeatureVector;
 import edu.gslis.utils.Stopper;
+import edu.gslis.utils.TopK;
 
 public class Rocchio {
 	
@@ -42,60 +49,134 @@ public class Rocchio {
 		this.stoplist = stoplist;
 	}
 	
+	/**
+	 * Replace the query's vector with alpha times its BM25-weighted terms plus beta times the
+	 * mean BM25 vector of the top fbDocs documents, keeping the fbTerms heaviest terms.
+	 * 
+	 * Collection statistics are read once, and document frequencies once per distinct term
+	 * (in one batch on a Lucene index).  Weights are summed in an array indexed by term.
+	 */
 	public void expandQuery(IndexWrapper index, GQuery query, int fbDocs, int fbTerms) throws IOException {
-		
 		SearchHits hits = index.runQuery(query, fbDocs);
+		expandQuery(index, query, hits, null, fbDocs, fbTerms);
+	}
+	
+	/**
+	 * As above, but feeding back the top fbDocs of hits already retrieved for the query, so the
+	 * query is not run again.
+	 * @param hits the first-round results, in rank order
+	 */
+	public void expandQuery(IndexWrapper index, GQuery query, SearchHits hits, int fbDocs, int fbTerms) throws IOException {
+		expandQuery(index, query, hits, null, fbDocs, fbTerms);
+	}
+	
+	/**
+	 * @param docVecs vectors of the top fbDocs hits, in order, if already fetched; otherwise null
+	 */
+	public void expandQuery(IndexWrapper index, GQuery query, SearchHits hits, FeatureVector[] docVecs, 
+			int fbDocs, int fbTerms) throws IOException {
 		
-		FeatureVector feedbackVec = new FeatureVector(stoplist);
-		
-		for (SearchHit hit: hits.hits()) {
-			// Get the document tokens and add to the doc vector
-			FeatureVector docVec = index.getDocVector(hit.getDocID(), stoplist);
-			
-			// Compute the BM25 weights and add to the feedbackVector
-			computeBM25Weights(index, docVec, feedbackVec);
+		if (docVecs == null) {
+			List<SearchHit> fbHits = hits.hits();
+			docVecs = docVectors(index, fbHits.subList(0, Math.min(fbDocs, fbHits.size())));
 		}
+		FeatureVector origQueryVec = query.getFeatureVector();
 		
-		// Multiply the summed term vector by beta / |Dr|
-		FeatureVector relDocTermVec = new FeatureVector(stoplist);
-		for (String term : feedbackVec.getFeatures()) {
-			relDocTermVec.addTerm(term, feedbackVec.getFeatureWeight(term) * beta / fbDocs);
+		// term -> slot in weights, over feedback documents and then the query
+		Map<String,Integer> slots = new HashMap<String,Integer>();
+		List<String> terms = new ArrayList<String>();
+		for (FeatureVector docVec : docVecs) {
+			addSlots(docVec, slots, terms);
 		}
+		addSlots(origQueryVec, slots, terms);
 		
-		// Create a query vector and scale by alpha
-		FeatureVector origQueryVec = query.getFeatureVector();
-		
-		FeatureVector weightedQueryVec = new FeatureVector(stoplist);
-		computeBM25Weights(index, origQueryVec, weightedQueryVec);
+		double[] idf = idf(index, terms);
+		double avgDocLen = index.docLengthAvg();
+		double[] weights = new double[terms.size()];
 		
-		FeatureVector queryTermVec = new FeatureVector(stoplist);
-		for (String term : origQueryVec.getFeatures()) {
-			queryTermVec.addTerm(term, weightedQueryVec.getFeatureWeight(term) * alpha);
+		// Sum the BM25 weights of the feedback documents...
+		for (FeatureVector docVec : docVecs) {
+			addBM25Weights(docVec, avgDocLen, slots, idf, weights, 1.0);
 		}
 		
-		// Combine query and feedback vectors
-		for (String term : queryTermVec.getFeatures()) {
-			relDocTermVec.addTerm(term, queryTermVec.getFeatureWeight(term));
+		// ...multiply the summed term vector by beta / |Dr|
+		for (int slot = 0; slot < weights.length; slot++) {
+			weights[slot] = weights[slot] * beta / fbDocs;
 		}
 		
+		// and add the query's, scaled by alpha
+		addBM25Weights(origQueryVec, avgDocLen, slots, idf, weights, alpha);
+		
 		// Get top terms
-		relDocTermVec.clip(fbTerms);
+		FeatureVector expandedVec = new FeatureVector(stoplist);
+		for (int slot : topTerms(terms, weights, fbTerms)) {
+			expandedVec.addTerm(terms.get(slot), weights[slot]);
+		}
 		
-		query.setFeatureVector(relDocTermVec);
+		query.setFeatureVector(expandedVec);
 	}
 	
-	private void computeBM25Weights(IndexWrapper index, FeatureVector docVec, FeatureVector summedTermVec) throws IOException {
+	private FeatureVector[] docVectors(IndexWrapper index, List<SearchHit> hits) {
+		if (index instanceof IndexWrapperIndriImpl) {
+			int[] docIDs = new int[hits.size()];
+			for (int i = 0; i < docIDs.length; i++) {
+				docIDs[i] = hits.get(i).getDocID();
+			}
+			return ((IndexWrapperIndriImpl)index).getDocVectors(docIDs, stoplist);
+		}
+		FeatureVector[] docVecs = new FeatureVector[hits.size()];
+		for (int i = 0; i < docVecs.length; i++) {
+			docVecs[i] = index.getDocVector(hits.get(i).getDocID(), stoplist);
+		}
+		return docVecs;
+	}
+	
+	private void addSlots(FeatureVector vec, Map<String,Integer> slots, List<String> terms) {
+		for (String term : vec.getFeatures()) {
+			if (stoplist != null && stoplist.isStopWord(term))
+				continue;
+			if (!slots.containsKey(term)) {
+				slots.put(term, terms.size());
+				terms.add(term);
+			}
+		}
+	}
+	
+	private double[] idf(IndexWrapper index, List<String> terms) {
+		double docCount = index.docCount();
+		Map<String,Double> docFreqs = null;
+		if (index instanceof IndexWrapperLuceneImpl)
+			docFreqs = ((IndexWrapperLuceneImpl)index).docFreqs(terms);
+		
+		double[] idf = new double[terms.size()];
+		for (int slot = 0; slot < idf.length; slot++) {
+			String term = terms.get(slot);
+			double docOccur = (docFreqs != null) ? docFreqs.get(term) : index.docFreq(term);
+			idf[slot] = Math.log( (docCount + 1) / (docOccur + 0.5) ); // following Indri
+		}
+		return idf;
+	}
+	
+	private void addBM25Weights(FeatureVector docVec, double avgDocLen, Map<String,Integer> slots, 
+			double[] idf, double[] weights, double scale) {
+		double lengthNorm = k1 * (1 - b + b * docVec.getLength() / avgDocLen);
 		for (String term : docVec.getFeatures()) {
-			double docCount = index.docCount();
-			double docOccur = index.docFreq(term);			
-			double avgDocLen = index.docLengthAvg();
-			
-			double idf = Math.log( (docCount + 1) / (docOccur + 0.5) ); // following Indri
+			Integer slot = slots.get(term);
+			if (slot == null)
+				continue;
 			double tf = docVec.getFeatureWeight(term);
 			
-			double weight = (idf * k1 * tf) / (tf + k1 * (1 - b + b * docVec.getLength() / avgDocLen));
-					
-			summedTermVec.addTerm(term, weight);
+			double weight = (idf[slot] * k1 * tf) / (tf + lengthNorm);
+			
+			weights[slot] += weight * scale;
 		}
 	}
+	
+	/**
+	 * @return slots of the k heaviest terms, heaviest first; equal weights go to the smaller term
+	 */
+	private int[] topTerms(List<String> terms, double[] weights, int k) {
+		String[] keys = terms.toArray(new String[terms.size()]);
+		return TopK.select(weights, keys, Math.max(k, 1));
+	}
 }
@@ -24,6 +24,7 @@ import org.apache.lucene.analysis.StopwordAnalyzerBase;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
@@ -35,6 +36,9 @@ import org.apache.lucene.util.Version;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
+import edu.gslis.docscoring.support.DocumentStatsBuilder;
+import edu.gslis.docscoring.support.DocumentStatsFile;
+import edu.gslis.indexes.IndexWrapperLuceneImpl;
 import edu.gslis.lucene.indexer.Indexer;
 import edu.gslis.lucene.indexer.JSONIndexer;
 import edu.gslis.lucene.indexer.StreamCorpusIndexer;
@@ -43,6 +47,7 @@ import edu.gslis.lucene.indexer.TrecTextIndexer;
 import edu.gslis.lucene.main.config.CorpusConfig;
 import edu.gslis.lucene.main.config.FieldConfig;
 import edu.gslis.lucene.main.config.IndexConfig;
+import edu.gslis.utils.Stopper;
 
 
 /**
@@ -80,6 +85,8 @@ import edu.gslis.lucene.main.config.IndexConfig;
  * <li> analyzer sets the analyzere class
  * <li> similarity is a string indicating model and parameters (modeled after IndriRunQuery)
  * <li> fields object gives fine-grained control over field indexing.
+ * <li> documentStats: true also writes a DocumentStatsFile (docstats) into each shard;
+ *      documentStatsSpecs lists SMART document weightings to store norms for, e.g. "lnc,ltc".
  * </ul>
  */
 public class LuceneBuildIndex {
@@ -275,12 +282,35 @@ public class LuceneBuildIndex {
                 } finally {
                     writer.close();
                 }   
+                
+                if (config.isDocumentStats())
+                    writeDocumentStats(indexPath, config);
             } catch (Exception e) {
                 System.out.println("Fatal: " + e.getMessage());
                 e.printStackTrace();                
             }
         }
         
+        public void writeDocumentStats(String indexPath, IndexConfig config) throws Exception {
+            System.err.println("Computing document stats for shard " + id);
+            IndexWrapperLuceneImpl index = new IndexWrapperLuceneImpl(indexPath);
+            try {
+                DocumentStatsBuilder builder = new DocumentStatsBuilder(index);
+                // vectors are already stopped by the analyzer; the stoplist is recorded for scorers
+                if (!StringUtils.isEmpty(config.getStopwords()))
+                    builder.setStopper(new Stopper(config.getStopwords()));
+                String specs = config.getDocumentStatsSpecs();
+                if (!StringUtils.isEmpty(specs)) {
+                    for (String spec: specs.split(","))
+                        builder.addDocSpec(spec.trim());
+                }
+                int maxDoc = ((IndexReader)index.getActualIndex()).maxDoc();
+                builder.build(indexPath + File.separator + DocumentStatsFile.FILE_NAME, 0, maxDoc);
+            } finally {
+                index.close();
+            }
+        }
+        
         public void writeIndexMetadata(String indexPath, IndexConfig config) 
                 throws IOException {
             // Need to hold on to a few pieces of information
@@ -210,7 +210,9 @@ public class LuceneRunQuery
             	
             	Rocchio rocchioFb = new Rocchio(config.getFbAlpha(), config.getFbBeta(), k1, b);
             	rocchioFb.setStopper(stopper);
-            	rocchioFb.expandQuery(index, query, config.getFbDocs(), config.getFbTerms());      	
+            	// feed back the first-round hits rather than running the query again
+            	hits.rank();
+            	rocchioFb.expandQuery(index, query, hits, config.getFbDocs(), config.getFbTerms());      	
             	            	
         		hits = index.runQuery(query, config.getNumResults(), similarityModel);
             }
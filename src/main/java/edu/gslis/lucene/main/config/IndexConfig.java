@@ -10,6 +10,8 @@ public class IndexConfig {
     String analyzer = "";
     String similarity = "";
     Set<FieldConfig> fields;
+    boolean documentStats = false;
+    String documentStatsSpecs = "";
     public String getIndexPath() {
         return indexPath;
     }
@@ -46,4 +48,16 @@ public class IndexConfig {
     public void setFields(Set<FieldConfig> fields) {
         this.fields = fields;
     }
+    public boolean isDocumentStats() {
+        return documentStats;
+    }
+    public void setDocumentStats(boolean documentStats) {
+        this.documentStats = documentStats;
+    }
+    public String getDocumentStatsSpecs() {
+        return documentStatsSpecs;
+    }
+    public void setDocumentStatsSpecs(String documentStatsSpecs) {
+        this.documentStatsSpecs = documentStatsSpecs;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package edu.gslis.output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.gslis.filtering.stream.EmissionHandler;
+import edu.gslis.searchhits.SearchHit;
+
+/**
+ * Writes filter emissions in trec_eval format as they happen, numbering each query's
+ * emissions in arrival order.
+ */
+public class FormattedEmissionsTrecEval implements EmissionHandler {
+
+	private Writer writer;
+	private String runId;
+	private Map<String,Integer> ranks;
+
+	public FormattedEmissionsTrecEval(String runId, Writer writer) {
+		this.runId = runId;
+		this.writer = writer;
+		this.ranks = new HashMap<String,Integer>();
+	}
+
+	public synchronized void emit(String queryName, SearchHit hit) {
+		Integer rank = ranks.get(queryName);
+		rank = (rank == null) ? 1 : rank + 1;
+		ranks.put(queryName, rank);
+
+		try {
+			writer.write(queryName + " Q0 " + hit.getDocno() + " " + rank + " " +
+					hit.getScore() + " " + runId + System.getProperty("line.separator"));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized void close() {
+		try {
+			writer.flush();
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -4,13 +4,16 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Iterator;
 
-import org.apache.commons.io.IOUtils;
-
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
 
 
+/**
+ * Singleton trec_eval format writer.  See TrecRunWriter for an instance that can be shared
+ * across threads or used for several runs at once.
+ */
 public class FormattedOutputTrecEval {
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
 	private static Writer writer;
 	private static String runId;
@@ -37,6 +40,7 @@ public class FormattedOutputTrecEval {
     }
 	public void write(SearchHits results, String queryName, int maxResults) {
 		Iterator<SearchHit> hitIterator = results.iterator();
+		StringBuilder line = new StringBuilder(128);
 		int k=1;
 		try {
 			while(hitIterator.hasNext()) {
@@ -48,14 +52,16 @@ public class FormattedOutputTrecEval {
 				if(hit.getDocno() == null || hit.getDocno().length()<2)
 					continue;
 				
-				String r = queryName + " Q0 " + hit.getDocno() + " " + k++ + " " + 
-						hit.getScore() + " " + runId + System.getProperty("line.separator");
+				line.setLength(0);
+				line.append(queryName).append(" Q0 ").append(hit.getDocno()).append(' ')
+					.append(k++).append(' ').append(hit.getScore()).append(' ')
+					.append(runId).append(LINE_SEPARATOR);
 				
-				if(r.contains("  "))
+				if(line.indexOf("  ") >= 0)
 					continue;
 				
 				
-				IOUtils.write(r, writer);
+				writer.append(line);
 			}
 			writer.flush();
 		} catch (Exception e) {
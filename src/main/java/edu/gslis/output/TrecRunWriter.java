@@ -0,0 +1,151 @@
+package edu.gslis.output;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * Writes trec_eval format runs.  Unlike FormattedOutputTrecEval this is an ordinary object, so
+ * several runs can be written at once, and it may be shared by threads: each query's block is
+ * formatted by the calling thread and then written whole, so blocks never interleave.
+ *
+ * Lines are built in a per-thread StringBuilder (appending a double there does not create a
+ * String), encoded straight from the builder into a per-thread byte buffer, and written through
+ * a large buffer.  Paths ending in ".gz" are gzipped.
+ */
+public class TrecRunWriter {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	private OutputStream out;
+	private String runId;
+
+	private static final ThreadLocal<Block> BLOCK = new ThreadLocal<Block>() {
+		protected Block initialValue() {
+			return new Block();
+		}
+	};
+
+	// one thread's query block, as text and then as UTF-8
+	private static class Block {
+		StringBuilder text = new StringBuilder(1 << 16);
+		ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+		CharsetEncoder encoder = UTF8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		void encode() {
+			CharBuffer chars = CharBuffer.wrap(text);
+			encoder.reset();
+			bytes.clear();
+			CoderResult result = encoder.encode(chars, bytes, true);
+			while(true) {
+				if(result.isUnderflow())
+					result = encoder.flush(bytes);
+				if(!result.isOverflow())
+					break;
+				ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+				bytes.flip();
+				larger.put(bytes);
+				bytes = larger;
+				result = chars.hasRemaining() ? encoder.encode(chars, bytes, true) : encoder.flush(bytes);
+			}
+		}
+	}
+
+	public TrecRunWriter(String runId, OutputStream out) {
+		this.runId = runId;
+		this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * @param runId run tag
+	 * @param pathToRun output file, gzipped if the name ends with .gz
+	 */
+	public static TrecRunWriter open(String runId, String pathToRun) throws IOException {
+		OutputStream file = new FileOutputStream(pathToRun);
+		if(pathToRun.endsWith(".gz"))
+			file = new GZIPOutputStream(file, BUFFER_SIZE);
+		return new TrecRunWriter(runId, file);
+	}
+
+	public void write(SearchHits results, String queryName) {
+		write(results, queryName, -1);
+	}
+
+	/**
+	 * Write one query's results in their current order, numbering ranks from 1.  As in
+	 * FormattedOutputTrecEval, hits whose docno is missing or shorter than two characters are
+	 * skipped; so are docnos containing whitespace, which would break the line's columns.
+	 * @param maxResults most lines to write, or -1 for all
+	 */
+	public void write(SearchHits results, String queryName, int maxResults) {
+		Block block = BLOCK.get();
+		block.text.setLength(0);
+
+		Iterator<SearchHit> hitIterator = results.iterator();
+		int k=1;
+		while(hitIterator.hasNext()) {
+			if(maxResults > 0 && k > maxResults)
+				break;
+			SearchHit hit = hitIterator.next();
+			String docno = hit.getDocno();
+			if(docno == null || docno.length() < 2 || hasWhitespace(docno))
+				continue;
+
+			block.text.append(queryName).append(" Q0 ").append(docno).append(' ')
+				.append(k++).append(' ')
+				.append(hit.getScore()).append(' ')
+				.append(runId).append(LINE_SEPARATOR);
+		}
+
+		block.encode();
+		synchronized(this) {
+			try {
+				out.write(block.bytes.array(), 0, block.bytes.position());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if(block.bytes.capacity() > BUFFER_SIZE)
+			BLOCK.remove();
+	}
+
+	private static boolean hasWhitespace(String s) {
+		for(int i=0; i<s.length(); i++) {
+			if(Character.isWhitespace(s.charAt(i)))
+				return true;
+		}
+		return false;
+	}
+
+	public synchronized void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized void close() {
+		try {
+			out.flush();
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package edu.gslis.pipeline;
+
+/**
+ * One step of a RetrievalPipeline.  An instance serves one worker thread, so it may keep
+ * per-query state (a scorer's query, say) between calls.
+ */
+public interface PipelineStage {
+
+	public String getName();
+
+	/**
+	 * Stages that read the index's own environment (documents, statistics) are run one at a
+	 * time when it is not thread-safe (Indri).  Stages that only call runQuery, which has its
+	 * own pool of environments, need not.
+	 */
+	public boolean usesIndex();
+
+	public void process(QueryState state) throws Exception;
+}
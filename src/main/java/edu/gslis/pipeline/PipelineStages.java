@@ -0,0 +1,387 @@
+package edu.gslis.pipeline;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.gslis.docaccumulators.ResultAccumulatorUnconstrained;
+import edu.gslis.docscoring.QueryDocScorer;
+import edu.gslis.docscoring.ScorerPLM;
+import edu.gslis.docscoring.ScorerSMART;
+import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.docscoring.support.DocumentStatsFile;
+import edu.gslis.docscoring.support.IndexBackedCollectionStats;
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.queries.GQuery;
+import edu.gslis.queries.expansion.Feedback;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.searchhits.TopKSearchHits;
+import edu.gslis.searchhits.UnscoredSearchHit;
+import edu.gslis.textrepresentation.FeatureVector;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Builds pipeline stages from their configuration, a map with a "type" and the type's settings:
+ *
+ *   retrieve    count (1000), rule: first-pass hits from IndexWrapper.runQuery
+ *   accumulate  every document matching a query term (Indri), unscored
+ *   hydrate     load each hit's document vector, if it has none
+ *   rescore     scorer (class name, default ScorerDirichlet), count (1000), bg-stat-type,
+ *               bg-source-path, params (map of scorer parameters), docstats (ScorerSMART's
+ *               DocumentStatsFile, by default docstats in the index directory if present)
+ *   feedback    model (Feedback class, default FeedbackRelevanceModel), fbDocs (20),
+ *               fbTerms (20), lambda (0.5, weight of the original query), count (1000):
+ *               expands the query from the current top hits and retrieves again
+ *
+ * Any stage may set "name", used when reporting timings.
+ */
+public class PipelineStages {
+	public static final String RETRIEVE = "retrieve";
+	public static final String ACCUMULATE = "accumulate";
+	public static final String HYDRATE = "hydrate";
+	public static final String RESCORE = "rescore";
+	public static final String FEEDBACK = "feedback";
+
+	public static final int DEFAULT_COUNT = 1000;
+
+	/**
+	 * @param indexPath the index's local directory, or null
+	 */
+	public static PipelineStage create(Map<String,Object> spec, IndexWrapper index, String indexPath,
+			Stopper stopper) throws Exception
+	{
+		String type = getString(spec, "type", null);
+		String name = getString(spec, "name", type);
+		if (RETRIEVE.equals(type))
+			return new PipelineStages().new RetrieveStage(name, spec, index);
+		else if (ACCUMULATE.equals(type))
+			return new PipelineStages().new AccumulateStage(name, index);
+		else if (HYDRATE.equals(type))
+			return new PipelineStages().new HydrateStage(name, index, stopper);
+		else if (RESCORE.equals(type))
+			return new PipelineStages().new RescoreStage(name, spec, index, indexPath, stopper);
+		else if (FEEDBACK.equals(type))
+			return new PipelineStages().new FeedbackStage(name, spec, index, stopper);
+		else
+			throw new Exception("Unsupported pipeline stage type '" + type + "'");
+	}
+
+	// Candidate generation from the search engine
+	class RetrieveStage implements PipelineStage {
+		String name;
+		IndexWrapper index;
+		int count;
+		String rule;
+
+		RetrieveStage(String name, Map<String,Object> spec, IndexWrapper index) {
+			this.name = name;
+			this.index = index;
+			this.count = getInt(spec, "count", DEFAULT_COUNT);
+			this.rule = getString(spec, "rule", null);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// runQuery takes an environment from the pool, or locks the wrapper itself
+		public boolean usesIndex() {
+			return false;
+		}
+
+		public void process(QueryState state) {
+			if (rule == null)
+				state.setHits(index.runQuery(state.getQuery(), count));
+			else
+				state.setHits(index.runQuery(state.getQuery(), count, rule));
+		}
+	}
+
+	// Candidate generation from postings: every document containing a query term
+	class AccumulateStage implements PipelineStage {
+		String name;
+		IndexWrapperIndriImpl index;
+
+		AccumulateStage(String name, IndexWrapper index) throws Exception {
+			if (!(index instanceof IndexWrapperIndriImpl))
+				throw new Exception("The accumulate stage needs an Indri index");
+			this.name = name;
+			this.index = (IndexWrapperIndriImpl)index;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean usesIndex() {
+			return true;
+		}
+
+		public void process(QueryState state) {
+			ResultAccumulatorUnconstrained accumulator =
+					new ResultAccumulatorUnconstrained(index, state.getQuery().getText());
+			accumulator.accumulate();
+			SearchHits hits = new SearchHits();
+			for (UnscoredSearchHit unscoredHit : accumulator.getAccumulatedDocs().values()) {
+				hits.add(unscoredHit.toSearchHit());
+			}
+			state.setHits(hits);
+		}
+	}
+
+	// Document vectors for hits that have none, in one batch on Indri
+	class HydrateStage implements PipelineStage {
+		String name;
+		IndexWrapper index;
+		Stopper stopper;
+
+		HydrateStage(String name, IndexWrapper index, Stopper stopper) {
+			this.name = name;
+			this.index = index;
+			this.stopper = stopper;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean usesIndex() {
+			return true;
+		}
+
+		public void process(QueryState state) {
+			List<SearchHit> hits = state.getHits().hits();
+			int n = 0;
+			int[] docIDs = new int[hits.size()];
+			for (SearchHit hit : hits) {
+				if (missingVector(hit))
+					docIDs[n++] = hit.getDocID();
+			}
+			if (n == 0)
+				return;
+
+			if (index instanceof IndexWrapperIndriImpl) {
+				int[] missing = java.util.Arrays.copyOf(docIDs, n);
+				FeatureVector[] vectors = ((IndexWrapperIndriImpl)index).getDocVectors(missing, stopper);
+				int k = 0;
+				for (SearchHit hit : hits) {
+					if (missingVector(hit))
+						hit.setFeatureVector(vectors[k++]);
+				}
+			} else {
+				for (SearchHit hit : hits) {
+					if (missingVector(hit))
+						hit.setFeatureVector(index.getDocVector(hit.getDocID(), stopper));
+				}
+			}
+		}
+
+		boolean missingVector(SearchHit hit) {
+			return hit.getFeatureVector() == null || hit.getFeatureVector().getFeatureCount() == 0;
+		}
+	}
+
+	// Rescoring with a QueryDocScorer, keeping the top count
+	class RescoreStage implements PipelineStage {
+		String name;
+		QueryDocScorer scorer;
+		int count;
+		boolean usesIndex;
+
+		@SuppressWarnings("unchecked")
+		RescoreStage(String name, Map<String,Object> spec, IndexWrapper index, String indexPath,
+				Stopper stopper) throws Exception {
+			this.name = name;
+			this.count = getInt(spec, "count", DEFAULT_COUNT);
+
+			ClassLoader loader = ClassLoader.getSystemClassLoader();
+			String statsClass = getString(spec, "bg-stat-type", null);
+			String statsPath = getString(spec, "bg-source-path", null);
+			CollectionStats corpusStats;
+			if (statsClass == null && statsPath == null) {
+				corpusStats = new IndexBackedCollectionStats();
+				((IndexBackedCollectionStats)corpusStats).setStatSource(index);
+			} else {
+				if (statsClass == null)
+					statsClass = "edu.gslis.docscoring.support.IndexBackedCollectionStats";
+				corpusStats = (CollectionStats)loader.loadClass(statsClass).newInstance();
+				if (statsPath != null)
+					corpusStats.setStatSource(statsPath);
+			}
+
+			String scorerType = getString(spec, "scorer", "edu.gslis.docscoring.ScorerDirichlet");
+			scorer = (QueryDocScorer)loader.loadClass(scorerType).newInstance();
+			scorer.setCollectionStats(corpusStats);
+
+			Map<String,Object> params = (Map<String,Object>)spec.get("params");
+			if (scorer instanceof ScorerPLM) {
+				ScorerPLM plm = (ScorerPLM)scorer;
+				plm.setIndex(index);
+				if (params != null && params.get("mu") != null)
+					plm.setMu(getDouble(params, "mu", 0));
+				if (params != null && params.get("sigma") != null)
+					plm.setSigma(getDouble(params, "sigma", 0));
+			} else if (params != null) {
+				for (String paramName : params.keySet()) {
+					Object value = params.get(paramName);
+					if (value instanceof Number)
+						scorer.setParameter(paramName, ((Number)value).doubleValue());
+					else
+						scorer.setParameter(paramName, String.valueOf(value));
+				}
+			}
+			scorer.init();
+			if (scorer instanceof ScorerSMART)
+				setDocumentStats((ScorerSMART)scorer, spec, index, indexPath, stopper);
+			usesIndex = (scorer instanceof ScorerPLM) || (corpusStats instanceof IndexBackedCollectionStats);
+		}
+
+		// a configured file must match the index and stoplist; the index's own is skipped if not
+		void setDocumentStats(ScorerSMART smart, Map<String,Object> spec, IndexWrapper index,
+				String indexPath, Stopper stopper) throws IOException {
+			String statsPath = getString(spec, "docstats", null);
+			if (statsPath != null) {
+				smart.setDocumentStats(DocumentStatsFile.open(statsPath, index, stopper));
+				return;
+			}
+			statsPath = DocumentStatsFile.pathInIndex(indexPath);
+			if (statsPath == null)
+				return;
+			try {
+				smart.setDocumentStats(DocumentStatsFile.open(statsPath, index, stopper));
+			} catch (IOException e) {
+				System.err.println("Not using document stats: " + e.getMessage());
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// only the positional model and index-backed statistics read the index
+		public boolean usesIndex() {
+			return usesIndex;
+		}
+
+		public void process(QueryState state) {
+			scorer.setQuery(state.getQuery());
+			if (scorer instanceof ScorerPLM)
+				((ScorerPLM)scorer).prefetch(state.getHits());
+
+			TopKSearchHits top = new TopKSearchHits(count);
+			Iterator<SearchHit> it = state.getHits().iterator();
+			while (it.hasNext()) {
+				SearchHit hit = it.next();
+				hit.setScore(scorer.score(hit));
+				top.offer(hit);
+			}
+			state.setHits(top.getSearchHits());
+		}
+	}
+
+	// Query expansion from the current top hits, then a new retrieval
+	class FeedbackStage implements PipelineStage {
+		String name;
+		IndexWrapper index;
+		Stopper stopper;
+		String model;
+		int fbDocs;
+		int fbTerms;
+		double lambda;
+		int count;
+
+		FeedbackStage(String name, Map<String,Object> spec, IndexWrapper index, Stopper stopper) {
+			this.name = name;
+			this.index = index;
+			this.stopper = stopper;
+			this.model = getString(spec, "model", "edu.gslis.queries.expansion.FeedbackRelevanceModel");
+			this.fbDocs = getInt(spec, "fbDocs", 20);
+			this.fbTerms = getInt(spec, "fbTerms", 20);
+			this.lambda = getDouble(spec, "lambda", 0.5);
+			this.count = getInt(spec, "count", DEFAULT_COUNT);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// the model is built under the index lock; the retrieval after it needs none
+		public boolean usesIndex() {
+			return false;
+		}
+
+		public void process(QueryState state) throws Exception {
+			Feedback feedback = (Feedback)ClassLoader.getSystemClassLoader().loadClass(model).newInstance();
+			feedback.setIndex(index);
+			feedback.setStopper(stopper);
+			feedback.setRes(state.getHits(), fbDocs);
+			feedback.setResVectors(hydratedVectors(state.getHits(), fbDocs));
+			feedback.setTermCount(fbTerms);
+			feedback.setOriginalQuery(state.getQuery());
+			Object lock = indexLock(index);
+			if (lock != null) {
+				synchronized (lock) {
+					feedback.build();
+				}
+			} else {
+				feedback.build();
+			}
+
+			GQuery expanded = feedback.asGquery();
+			FeatureVector original = state.getQuery().getFeatureVector().deepCopy();
+			original.normalize();
+			FeatureVector fbVector = expanded.getFeatureVector();
+			fbVector.normalize();
+			expanded.setFeatureVector(FeatureVector.interpolate(original, fbVector, lambda));
+
+			state.setQuery(expanded);
+			state.setHits(index.runQuery(expanded, count));
+		}
+
+		// vectors of the top hits, if an earlier hydrate stage loaded them all
+		FeatureVector[] hydratedVectors(SearchHits hits, int k) {
+			int n = Math.min(k, hits.size());
+			FeatureVector[] vectors = new FeatureVector[n];
+			for (int i = 0; i < n; i++) {
+				vectors[i] = hits.getHit(i).getFeatureVector();
+				if (vectors[i] == null || vectors[i].getFeatureCount() == 0)
+					return null;
+			}
+			return vectors;
+		}
+	}
+
+	/**
+	 * @return what stages that read the index must hold while they do so: the wrapper itself for
+	 *         Indri, whose environment is not thread-safe; null otherwise
+	 */
+	static Object indexLock(IndexWrapper index) {
+		return (index instanceof IndexWrapperIndriImpl) ? index : null;
+	}
+
+	static String getString(Map<String,Object> spec, String key, String defaultValue) {
+		Object value = spec.get(key);
+		return (value == null) ? defaultValue : String.valueOf(value);
+	}
+
+	static int getInt(Map<String,Object> spec, String key, int defaultValue) {
+		Object value = spec.get(key);
+		if (value == null)
+			return defaultValue;
+		if (value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(String.valueOf(value));
+	}
+
+	static double getDouble(Map<String,Object> spec, String key, double defaultValue) {
+		Object value = spec.get(key);
+		if (value == null)
+			return defaultValue;
+		if (value instanceof Number)
+			return ((Number)value).doubleValue();
+		return Double.parseDouble(String.valueOf(value));
+	}
+}
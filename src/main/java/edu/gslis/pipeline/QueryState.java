@@ -0,0 +1,60 @@
+package edu.gslis.pipeline;
+
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * One query's progress through a RetrievalPipeline.  Stages read and replace the current query
+ * (feedback expands it) and the current hits.
+ */
+public class QueryState {
+	private final int position;
+	private final GQuery originalQuery;
+	private GQuery query;
+	private SearchHits hits = new SearchHits();
+	private boolean failed = false;
+
+	public QueryState(int position, GQuery query) {
+		this.position = position;
+		this.originalQuery = query;
+		this.query = query;
+	}
+
+	/**
+	 * @return position of the query in the query file
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	public GQuery getOriginalQuery() {
+		return originalQuery;
+	}
+
+	public GQuery getQuery() {
+		return query;
+	}
+
+	public void setQuery(GQuery query) {
+		this.query = query;
+	}
+
+	public SearchHits getHits() {
+		return hits;
+	}
+
+	public void setHits(SearchHits hits) {
+		this.hits = hits;
+	}
+
+	/**
+	 * @return whether a stage threw on this query, so later stages skip it
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	public void setFailed(boolean failed) {
+		this.failed = failed;
+	}
+}
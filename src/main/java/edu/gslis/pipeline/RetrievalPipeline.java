@@ -0,0 +1,308 @@
+package edu.gslis.pipeline;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.yaml.snakeyaml.Yaml;
+
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.indexes.IndexWrapperFactory;
+import edu.gslis.output.TrecRunWriter;
+import edu.gslis.queries.GQueries;
+import edu.gslis.queries.GQueriesFactory;
+import edu.gslis.queries.GQuery;
+import edu.gslis.utils.Stopper;
+
+/**
+ * Runs a query file through a declared sequence of stages, e.g. retrieve 1000 candidates,
+ * hydrate their vectors, rescore with a more expensive model, and write the top 100.
+ * The configuration is YAML (or JSON, which is also YAML):
+ *
+ *   index: /path/to/index
+ *   queries: /path/to/queries
+ *   stopper: /path/to/stoplist        (optional)
+ *   run-name: plm
+ *   output: plm.run.gz                (standard output if absent)
+ *   threads: 4                        (workers per stage)
+ *   queue: 16                         (queries waiting between stages)
+ *   stages:
+ *     - type: retrieve
+ *       count: 1000
+ *     - type: rescore
+ *       scorer: edu.gslis.docscoring.ScorerPLM
+ *       params: {mu: 2500, sigma: 175}
+ *       count: 100
+ *
+ * See PipelineStages for the stage types.  Every stage has its own workers, connected by
+ * bounded queues, so one query can be rescored while the next is being retrieved.  An Indri
+ * index is opened with one query environment per worker, so retrievals run concurrently;
+ * stages that read documents or statistics from an Indri index take turns on it, since Indri
+ * is not thread-safe.  Runs are written in query file order.  A query whose stage throws is
+ * reported and left out of the run.
+ */
+public class RetrievalPipeline {
+	public static final int DEFAULT_THREADS = 1;
+	public static final int DEFAULT_QUEUE = 16;
+
+	private static final QueryState END = new QueryState(-1, null);
+
+	private IndexWrapper index;
+	private String indexPath;
+	private Stopper stopper;
+	private List<Map<String,Object>> stageSpecs;
+	private int numThreads = DEFAULT_THREADS;
+	private int queueSize = DEFAULT_QUEUE;
+
+	private Map<String,AtomicLong> stageNanos = new LinkedHashMap<String,AtomicLong>();
+	private Map<String,AtomicInteger> stageCounts = new LinkedHashMap<String,AtomicInteger>();
+
+	public RetrievalPipeline(IndexWrapper index, Stopper stopper, List<Map<String,Object>> stageSpecs) {
+		this.index = index;
+		this.stopper = stopper;
+		this.stageSpecs = stageSpecs;
+	}
+
+	/**
+	 * @param indexPath the index's local directory, where stages look for files built with it
+	 */
+	public void setIndexPath(String indexPath) {
+		this.indexPath = indexPath;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = Math.max(queueSize, 1);
+	}
+
+	/**
+	 * Run every query through the stages and write each query's final hits to out.
+	 * @throws Exception an Error a stage threw, once the queries after it have been skipped, or
+	 *         why the run was cancelled: an interrupt, or what the output threw
+	 */
+	public void run(GQueries queries, final TrecRunWriter out) throws Exception {
+		int numStages = stageSpecs.size();
+		List<BlockingQueue<QueryState>> queues = new ArrayList<BlockingQueue<QueryState>>(numStages + 1);
+		for (int i = 0; i <= numStages; i++) {
+			queues.add(new ArrayBlockingQueue<QueryState>(queueSize));
+		}
+
+		// after an Error later queries are skipped; after a cancel every thread stops at once
+		final AtomicReference<Throwable> fatal = new AtomicReference<Throwable>();
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		final List<Thread> threads = new ArrayList<Thread>();
+		threads.add(Thread.currentThread());
+
+		final Object indexLock = PipelineStages.indexLock(index);
+		for (int i = 0; i < numStages; i++) {
+			final BlockingQueue<QueryState> in = queues.get(i);
+			final BlockingQueue<QueryState> next = queues.get(i + 1);
+			final AtomicInteger running = new AtomicInteger(numThreads);
+			// timed by position, so that stages of the same type and name are told apart
+			final AtomicLong nanos = new AtomicLong();
+			final AtomicInteger count = new AtomicInteger();
+			for (int t = 0; t < numThreads; t++) {
+				final PipelineStage stage = PipelineStages.create(stageSpecs.get(i), index, indexPath, stopper);
+				if (t == 0) {
+					stageNanos.put(i + ":" + stage.getName(), nanos);
+					stageCounts.put(i + ":" + stage.getName(), count);
+				}
+				threads.add(new Thread(new Runnable() {
+					public void run() {
+						try {
+							while (!cancelled.get()) {
+								QueryState state = in.take();
+								if (state == END) {
+									// let this stage's other workers see the end too; the last one passes it on
+									in.put(END);
+									if (running.decrementAndGet() == 0)
+										next.put(END);
+									return;
+								}
+								if (fatal.get() != null) {
+									state.setFailed(true);
+								} else if (!state.isFailed()) {
+									long start = System.nanoTime();
+									try {
+										if (indexLock != null && stage.usesIndex()) {
+											synchronized (indexLock) {
+												stage.process(state);
+											}
+										} else {
+											stage.process(state);
+										}
+									} catch (Throwable e) {
+										System.err.println("Stage " + stage.getName() + " failed on query "
+												+ state.getOriginalQuery().getTitle());
+										e.printStackTrace();
+										state.setFailed(true);
+										if (e instanceof Error)
+											fatal.compareAndSet(null, e);
+									}
+									nanos.addAndGet(System.nanoTime() - start);
+									count.incrementAndGet();
+								}
+								// a stage may have swallowed the interrupt that cancelled the run
+								if (cancelled.get())
+									return;
+								next.put(state);
+							}
+						} catch (InterruptedException e) {
+							cancel(fatal, cancelled, e, threads);
+						}
+					}
+				}, "pipeline-" + stage.getName() + "-" + t));
+			}
+		}
+
+		// the sink puts results back into query file order
+		final BlockingQueue<QueryState> last = queues.get(numStages);
+		threads.add(new Thread(new Runnable() {
+			public void run() {
+				Map<Integer,QueryState> waiting = new HashMap<Integer,QueryState>();
+				int nextPosition = 0;
+				try {
+					while (!cancelled.get()) {
+						QueryState state = last.take();
+						if (state == END)
+							break;
+						waiting.put(state.getPosition(), state);
+						while (waiting.containsKey(nextPosition)) {
+							QueryState done = waiting.remove(nextPosition++);
+							if (!done.isFailed())
+								out.write(done.getHits(), done.getOriginalQuery().getTitle());
+						}
+					}
+				} catch (Throwable e) {
+					cancel(fatal, cancelled, e, threads);
+				}
+				out.flush();
+			}
+		}, "pipeline-output"));
+
+		List<Thread> started = threads.subList(1, threads.size());
+		for (Thread thread : started) {
+			thread.start();
+		}
+		try {
+			BlockingQueue<QueryState> first = queues.get(0);
+			Iterator<GQuery> queryIterator = queries.iterator();
+			int position = 0;
+			while (queryIterator.hasNext()) {
+				first.put(new QueryState(position++, queryIterator.next()));
+			}
+			first.put(END);
+
+			for (Thread thread : started) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			cancel(fatal, cancelled, e, threads);
+		}
+		if (cancelled.get()) {
+			// every thread is stopping; wait for them, and drop the interrupts cancel() sent here
+			for (Thread thread : started) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+			Thread.interrupted();
+		}
+
+		Throwable failure = fatal.get();
+		if (failure instanceof Error)
+			throw (Error)failure;
+		if (failure instanceof Exception)
+			throw (Exception)failure;
+	}
+
+	/**
+	 * Stops the run: records why, unless something already has, and interrupts every other
+	 * pipeline thread and the caller of run(), so that none is left waiting on a queue.
+	 */
+	private static void cancel(AtomicReference<Throwable> fatal, AtomicBoolean cancelled, Throwable cause,
+			List<Thread> threads) {
+		fatal.compareAndSet(null, cause);
+		cancelled.set(true);
+		for (Thread thread : threads) {
+			if (thread != Thread.currentThread())
+				thread.interrupt();
+		}
+	}
+
+	/**
+	 * @return milliseconds spent in each stage, summed over its workers, in stage order and keyed
+	 *         by position and name, e.g. "1:rescore"
+	 */
+	public Map<String,Double> getTimings() {
+		Map<String,Double> timings = new LinkedHashMap<String,Double>();
+		for (String name : stageNanos.keySet()) {
+			timings.put(name, stageNanos.get(name).get() / 1e6);
+		}
+		return timings;
+	}
+
+	public void printTimings() {
+		for (String name : stageNanos.keySet()) {
+			int count = stageCounts.get(name).get();
+			double millis = stageNanos.get(name).get() / 1e6;
+			System.err.println(String.format("%-16s %6d queries %12.1f ms %10.2f ms/query",
+					name, count, millis, (count == 0) ? 0.0 : millis / count));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("usage: RetrievalPipeline <config.yaml>");
+			System.exit(-1);
+		}
+		File configFile = new File(args[0]);
+		if (!configFile.exists()) {
+			System.err.println("Configuration file not found.");
+			System.exit(-1);
+		}
+		InputStream in = new FileInputStream(configFile);
+		Map<String,Object> config = (Map<String,Object>)new Yaml().load(in);
+		in.close();
+
+		int threads = PipelineStages.getInt(config, "threads", DEFAULT_THREADS);
+		String indexPath = PipelineStages.getString(config, "index", null);
+		IndexWrapper index = IndexWrapperFactory.getIndexWrapper(indexPath, threads);
+		GQueries queries = GQueriesFactory.getGQueries(PipelineStages.getString(config, "queries", null));
+		String stopPath = PipelineStages.getString(config, "stopper", null);
+		Stopper stopper = (stopPath == null) ? new Stopper() : new Stopper(stopPath);
+		String runName = PipelineStages.getString(config, "run-name", "pipeline");
+		String outPath = PipelineStages.getString(config, "output", null);
+
+		RetrievalPipeline pipeline = new RetrievalPipeline(index, stopper,
+				(List<Map<String,Object>>)config.get("stages"));
+		pipeline.setIndexPath(indexPath);
+		pipeline.setNumThreads(threads);
+		pipeline.setQueueSize(PipelineStages.getInt(config, "queue", DEFAULT_QUEUE));
+
+		TrecRunWriter out = (outPath == null) ? new TrecRunWriter(runName, System.out)
+				: TrecRunWriter.open(runName, outPath);
+		pipeline.run(queries, out);
+		out.close();
+		pipeline.printTimings();
+	}
+}
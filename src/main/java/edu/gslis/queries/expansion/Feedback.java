@@ -1,12 +1,15 @@
 package edu.gslis.queries.expansion;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import edu.gslis.indexes.IndexWrapper;
 import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
 import edu.gslis.searchhits.SearchHits;
 import edu.gslis.textrepresentation.FeatureVector;
 import edu.gslis.utils.KeyValuePair;
@@ -18,6 +21,7 @@ import edu.gslis.utils.Stopper;
 public abstract class Feedback {
 	protected IndexWrapper index;
 	protected SearchHits relDocs;
+	protected FeatureVector[] relDocVectors;
 	protected SearchHits nrelDocs;
 	protected GQuery originalQuery;
 	protected int fbDocCount  = 20;
@@ -38,11 +42,9 @@ public abstract class Feedback {
 		
 		FeatureVector finalVector = new FeatureVector(stopper);
 		
-		features.sort(true);
-		Iterator<KeyValuePair> it = features.iterator();
+		Iterator<KeyValuePair> it = features.top(fbTermCount).iterator();
 		
-		int i=0;
-		while(it.hasNext() && i++ < fbTermCount) {			
+		while(it.hasNext()) {			
 			KeyValuePair tuple = it.next();
 			finalVector.addTerm(tuple.getKey(), tuple.getScore());
 		}
@@ -89,18 +91,16 @@ public abstract class Feedback {
 	
 	public String toString(int k) {
 		DecimalFormat format = new DecimalFormat("#.#####################");
-		features.sort(true);
+		List<KeyValuePair> top = features.top(k);
 		double sum = 0.0;
-		Iterator<KeyValuePair> it = features.iterator();
-		int i=0;
-		while(it.hasNext() && i++ < k) {			
+		Iterator<KeyValuePair> it = top.iterator();
+		while(it.hasNext()) {			
 			sum += it.next().getScore();
 		}
 		
 		StringBuilder b = new StringBuilder();
-		it = features.iterator();
-		i=0;
-		while(it.hasNext() && i++ < k) {			
+		it = top.iterator();
+		while(it.hasNext()) {			
 			KeyValuePair tuple = it.next();
 			b.append(format.format(tuple.getScore()/sum) + " " + tuple.getKey() + "\n");
 		}
@@ -115,6 +115,31 @@ public abstract class Feedback {
 	}
 	public void setRes(SearchHits relDocs) {
 		this.relDocs = relDocs;
+		this.relDocVectors = null;
+	}
+	/**
+	 * Feed back the top fbDocCount hits of a retrieval already run for the original query, rather
+	 * than running it again.  The hits are copied, so build (FeedbackPRM rescales scores to
+	 * posteriors) leaves firstRound as it was.
+	 * @param firstRound hits in rank order
+	 */
+	public void setRes(SearchHits firstRound, int fbDocCount) {
+		this.fbDocCount = fbDocCount;
+		List<SearchHit> hits = firstRound.hits();
+		int n = Math.min(fbDocCount, hits.size());
+		List<SearchHit> copies = new ArrayList<SearchHit>(n);
+		for(int i=0; i<n; i++)
+			copies.add(new SearchHit(hits.get(i)));
+		this.relDocs = new SearchHits(copies);
+		this.relDocVectors = null;
+	}
+	/**
+	 * @param relDocVectors document vectors of the feedback hits, in the same order, when the
+	 *   caller already has them; build then skips reading them from the index.  Call after setRes,
+	 *   which drops any vectors set for earlier hits.
+	 */
+	public void setResVectors(FeatureVector[] relDocVectors) {
+		this.relDocVectors = relDocVectors;
 	}
 	public void setNRelDocs(SearchHits nrelDocs) {
 	    this.nrelDocs = nrelDocs;
@@ -1,13 +1,21 @@
 package edu.gslis.queries.expansion;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 
+import edu.gslis.indexes.IndexWrapperIndriImpl;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.utils.KeyValuePair;
 import edu.gslis.utils.KeyValuePairs;
@@ -18,11 +26,18 @@ import edu.gslis.utils.KeyValuePairs;
  * Positional relevance model (Lv and Zhai 2010)
  * 
  * Ported from: *  http://sifaka.cs.uiuc.edu/~ylv2/pub/prm/PositionalRelevanceModel.cpp
+ * 
+ * Each document is turned into term ids once.  Kernel values are looked up by distance and
+ * only query-term occurrences within kernelSigmas standard deviations of a position are
+ * visited.  The default of 40 drops only contributions that underflow to zero anyway.
+ * Documents are scored on setNumThreads threads.
  */
 public class FeedbackPRM extends Feedback {
 	private double sigma = 10;
 	private double lambda = 0.1;
 	int fbMethod = 2;
+	private double kernelSigmas = 40;
+	private int numThreads = 1;
 	
     Map<String, Integer> queryTerms = new HashMap<String, Integer>();
 
@@ -47,6 +62,17 @@ public class FeedbackPRM extends Feedback {
     public void setLambda(double lambda) {
         this.lambda = lambda;
     }
+    
+    /**
+     * @param kernelSigmas ignore query term occurrences farther than this many sigmas away
+     */
+    public void setKernelSigmas(double kernelSigmas) {
+        this.kernelSigmas = kernelSigmas;
+    }
+    
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
 	@Override
 	public void build() {
 	    
@@ -62,116 +88,70 @@ public class FeedbackPRM extends Feedback {
 
 			relDocs.logToPosterior();
 			
+			final List<SearchHit> hits = new ArrayList<SearchHit>(relDocs.size());
 			Iterator<SearchHit> hitIterator = relDocs.iterator();
-	
+			while (hitIterator.hasNext())
+			    hits.add(hitIterator.next());
 
 			// estimate a simple collection language model for the current query
-			Map<String, Double> colLM = new HashMap<String, Double>();
+			final String[] qterms = queryTerms.keySet().toArray(new String[queryTerms.size()]);
+			final double[] qcounts = new double[qterms.length];
+			final double[] colLM = new double[qterms.length];
 			double colFreq = index.termCount();
-            for (String qterm: queryTerms.keySet()) {
-                double colpr = index.termFreq(qterm) / colFreq;
-                colLM.put(qterm, colpr);
-            }
-			
-			// For each query result
-			while (hitIterator.hasNext()) {
-	            SearchHit hit = hitIterator.next();
-	            List<String> docTerms = index.getDocTerms(hit.getDocID());
-			    
-	            // First pass: record the position of each query term
-                Map<Integer, String> posQTermMap = new HashMap<Integer, String>();
-                
-                // double docLength = termPosMap.size();
-                double stoppedDocLength = 0;
-                
-	            for (int pos = 0; pos < docTerms.size(); pos++) {
-	                String term = docTerms.get(pos);
-	                
-                    if (!isValidWord(term))
-	                    continue;
-	                
-	                stoppedDocLength++;
-	                
-    			    for (String qterm: queryTerms.keySet()) {
-    			        if (term.equals(qterm)) {
-      			            posQTermMap.put(pos, term);
-    			        }
-    			    }
-	            }
-			    
-	            double[] posScores = new double[docTerms.size()];
-	            double posScoreSum = 0;
-	            
-			    // Second pass: estimate PLMs
-			    double lenNorm = Math.sqrt(2 * Math.PI) * sigma;
-			    for (int i=0; i< docTerms.size(); i++) {
-			        String term = docTerms.get(i);
-			        
-                    if (!isValidWord(term))
-			            continue;
-			        
-			        // Language model for position
-			        Map<String, Double> plm_i = new HashMap<String, Double>();
-			        
-			        // aggregate evidence from every query term
-			        for (int j: posQTermMap.keySet()) {
-			            String qterm = posQTermMap.get(j);
-			            
-			            double dis = (j - i) / sigma;
-			            double pr = Math.exp( - dis * dis/2.0) / lenNorm;
-			            
-			            if (pr > 0) {
-    			            Double pr_i = plm_i.get(qterm);
-    			            if (pr_i == null) {
-    			                plm_i.put(qterm, pr);			                
-    			            }
-    			            else {
-    			                plm_i.put(qterm, pr_i + pr);
-    			            }	
-			            }
+			for (int q = 0; q < qterms.length; q++) {
+			    qcounts[q] = queryTerms.get(qterms[q]);
+			    colLM[q] = index.termFreq(qterms[q]) / colFreq;
+			}
+
+			final List<List<String>> docTerms = docTerms(hits);
+			int longest = 0;
+			for (List<String> terms : docTerms)
+			    longest = Math.max(longest, terms.size());
+			final double[] kernel = kernel(longest);
+
+			List<PositionalWeights> docWeights = new ArrayList<PositionalWeights>(hits.size());
+			if (numThreads <= 1 || hits.size() <= 1) {
+			    for (int d = 0; d < hits.size(); d++)
+			        docWeights.add(weigh(docTerms.get(d), hits.get(d).getScore(), qterms, qcounts, colLM, kernel));
+			} else {
+			    ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, hits.size()));
+			    try {
+			        List<Future<PositionalWeights>> futures = new ArrayList<Future<PositionalWeights>>(hits.size());
+			        for (int d = 0; d < hits.size(); d++) {
+			            final int doc = d;
+			            futures.add(executor.submit(new Callable<PositionalWeights>() {
+			                public PositionalWeights call() throws Exception {
+			                    return weigh(docTerms.get(doc), hits.get(doc).getScore(), qterms, qcounts, colLM, kernel);
+			                }
+			            }));
 			        }
-		             // Smooth PLM 
-	                smooth(plm_i, colLM, lambda);
-	                
-	                // compute query likelihood
-	                double ql = computeQL(queryTerms, plm_i, colLM);
-	                posScores[i] = ql;
-	                posScoreSum += ql;
+			        for (Future<PositionalWeights> future : futures)
+			            docWeights.add(future.get());
+			    } finally {
+			        executor.shutdown();
+			        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			    }
+			}
+
+			// aggregate feedback counts, in document order
+			for (PositionalWeights weights : docWeights) {
+			    for (int t = 0; t < weights.terms.length; t++) {
+			        if (!(weights.weights[t] > 0))
+			            continue;
+			        Double weight = featureMap.get(weights.terms[t]);
+			        featureMap.put(weights.terms[t], (weight == null) ? weights.weights[t] : weight + weights.weights[t]);
 			    }
-			    
-	             // Third pass: aggregate feedback counts
-			    for (int i=0; i<docTerms.size(); i++) {
-                    double posScore = posScores[i];
-                    String term = docTerms.get(i);
-                    
-                    if (!isValidWord(term))
-                        continue;
-                    
-                    if (fbMethod == 1) 
-                        posScore = posScore/stoppedDocLength;
-                    else
-                        posScore = posScore * hit.getScore() / posScoreSum;
-                    
-                    if (posScore > 0) {
-                        if (featureMap.get(term) != null) {
-                            double weight = featureMap.get(term);
-                            weight += posScore;
-                            featureMap.put(term, weight);
-                        }
-                        else
-                            featureMap.put(term, posScore);
-                    }
-                }
 			}
+
 			double sum = 0;
             for (String term: featureMap.keySet()) {
-                if (stopper.isStopWord(term))
+                if (stopper != null && stopper.isStopWord(term))
                     continue;
                 sum += featureMap.get(term);
             }			
             
 			for (String term: featureMap.keySet()) {
-			    if (stopper.isStopWord(term))
+			    if (stopper != null && stopper.isStopWord(term))
 			        continue;
                 KeyValuePair tuple = new KeyValuePair(term, featureMap.get(term)/sum);                
                 features.add(tuple);
@@ -181,6 +161,133 @@ public class FeedbackPRM extends Feedback {
 			e.printStackTrace();
 		}
 	}
+
+    // feedback weight per distinct term of one document
+    private static class PositionalWeights {
+        String[] terms;
+        double[] weights;
+    }
+
+    private List<List<String>> docTerms(List<SearchHit> hits) {
+        if (index instanceof IndexWrapperIndriImpl) {
+            int[] docIDs = new int[hits.size()];
+            for (int d = 0; d < docIDs.length; d++)
+                docIDs[d] = hits.get(d).getDocID();
+            List<List<String>> docs = ((IndexWrapperIndriImpl)index).getDocTerms(docIDs);
+            if (docs.size() == docIDs.length)
+                return docs;
+        }
+        List<List<String>> docs = new ArrayList<List<String>>(hits.size());
+        for (SearchHit hit : hits)
+            docs.add(index.getDocTerms(hit.getDocID()));
+        return docs;
+    }
+
+    /**
+     * Gaussian kernel by integer distance, cut off at kernelSigmas standard deviations.
+     */
+    private double[] kernel(int longestDoc) {
+        double lenNorm = Math.sqrt(2 * Math.PI) * sigma;
+        int width = (int)Math.min(Math.ceil(kernelSigmas * sigma), (double)longestDoc);
+        double[] kernel = new double[Math.max(width, 0) + 1];
+        for (int d = 0; d < kernel.length; d++) {
+            double dis = d / sigma;
+            kernel[d] = Math.exp( - dis * dis/2.0) / lenNorm;
+        }
+        return kernel;
+    }
+
+    /**
+     * Scores every valid position of one document by the query likelihood of its smoothed
+     * positional language model, then spreads the document's weight over its terms.
+     */
+    private PositionalWeights weigh(List<String> docTerms, double docScore, String[] qterms,
+            double[] qcounts, double[] colLM, double[] kernel) {
+        int n = docTerms.size();
+
+        // term ids, with validity and query term index decided once per distinct term
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> vocab = new ArrayList<String>();
+        List<Boolean> valid = new ArrayList<Boolean>();
+        List<Integer> queryIndex = new ArrayList<Integer>();
+        int[] termIds = new int[n];
+        for (int pos = 0; pos < n; pos++) {
+            String term = docTerms.get(pos);
+            Integer id = ids.get(term);
+            if (id == null) {
+                id = vocab.size();
+                ids.put(term, id);
+                vocab.add(term);
+                valid.add(isValidWord(term));
+                int q = -1;
+                for (int k = 0; k < qterms.length && q < 0; k++)
+                    if (term.equals(qterms[k]))
+                        q = k;
+                queryIndex.add(q);
+            }
+            termIds[pos] = id;
+        }
+
+        // First pass: record the positions of each query term
+        int[][] qpos = new int[qterms.length][];
+        int[] qposCount = new int[qterms.length];
+        for (int q = 0; q < qterms.length; q++)
+            qpos[q] = new int[4];
+        double stoppedDocLength = 0;
+        for (int pos = 0; pos < n; pos++) {
+            if (!valid.get(termIds[pos]))
+                continue;
+            stoppedDocLength++;
+            int q = queryIndex.get(termIds[pos]);
+            if (q >= 0) {
+                if (qposCount[q] == qpos[q].length)
+                    qpos[q] = Arrays.copyOf(qpos[q], qpos[q].length * 2);
+                qpos[q][qposCount[q]++] = pos;
+            }
+        }
+
+        // Second pass: score each position's smoothed PLM, sliding a window over each query term's positions
+        int width = kernel.length - 1;
+        int[] windowStart = new int[qterms.length];
+        double[] posScores = new double[n];
+        double posScoreSum = 0;
+        for (int i = 0; i < n; i++) {
+            if (!valid.get(termIds[i]))
+                continue;
+            double ql = 1.0;
+            for (int q = 0; q < qterms.length; q++) {
+                int[] positions = qpos[q];
+                while (windowStart[q] < qposCount[q] && positions[windowStart[q]] < i - width)
+                    windowStart[q]++;
+                double pr = 0.0;
+                for (int p = windowStart[q]; p < qposCount[q] && positions[p] <= i + width; p++)
+                    pr += kernel[Math.abs(positions[p] - i)];
+                double dpr = (1 - lambda) * pr + lambda * colLM[q];
+                ql *= Math.pow(dpr / colLM[q], qcounts[q]);
+            }
+            posScores[i] = ql;
+            posScoreSum += ql;
+        }
+
+        // Third pass: aggregate feedback counts for this document
+        double[] weights = new double[vocab.size()];
+        for (int i = 0; i < n; i++) {
+            if (!valid.get(termIds[i]))
+                continue;
+            double posScore = posScores[i];
+            if (fbMethod == 1) 
+                posScore = posScore/stoppedDocLength;
+            else
+                posScore = posScore * docScore / posScoreSum;
+            if (posScore > 0)
+                weights[termIds[i]] += posScore;
+        }
+
+        PositionalWeights result = new PositionalWeights();
+        result.terms = vocab.toArray(new String[vocab.size()]);
+        result.weights = weights;
+        return result;
+    }
 		
 	public double computeQL(Map<String, Integer> queryTerms, Map<String, Double> docLM, 
 	        Map<String, Double> colLM) {
@@ -1,96 +1,169 @@
 package edu.gslis.queries.expansion;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import edu.gslis.indexes.IndexWrapperIndriImpl;
 import edu.gslis.searchhits.SearchHit;
 import edu.gslis.textrepresentation.FeatureVector;
 import edu.gslis.utils.KeyValuePair;
 import edu.gslis.utils.KeyValuePairs;
+import edu.gslis.utils.TopK;
 
 
 
-
+/**
+ * Relevance model (RM1): P(w|R) = sum over feedback docs D of P(w|D) P(D|Q).
+ *
+ * P(D|Q) is the softmax of the feedback docs' retrieval scores (log-likelihoods), computed
+ * with log-sum-exp so large scores don't overflow, and optionally scaled by setDocWeights.
+ * Each document's vector is walked once and its weighted term probabilities are added to a
+ * primitive accumulator.  Only the fbTermCount heaviest terms are kept.
+ *
+ * Vectors set with setResVectors are used as given.  Otherwise they come from a single batch
+ * call on an Indri index.  For other indexes they are
+ * fetched on setNumThreads threads.
+ */
 public class FeedbackRelevanceModel extends Feedback {
 	private boolean adHocGroom = false;
 	private double[] docWeights = null;
-	
+	private int numThreads = 1;
+
 	@Override
 	public void build() {
 		try {
-			Set<String> vocab = new HashSet<String>();
-			List<FeatureVector> fbDocVectors = new LinkedList<FeatureVector>();
-
 			if(relDocs == null) {
 				relDocs = index.runQuery(originalQuery, fbDocCount);
 			}
 
-			double[] rsvs = new double[relDocs.size()];
-			int k=0;
+			List<SearchHit> hits = new ArrayList<SearchHit>(relDocs.size());
 			Iterator<SearchHit> hitIterator = relDocs.iterator();
 			while(hitIterator.hasNext()) {
-				SearchHit hit = hitIterator.next();
-				rsvs[k++] = Math.exp(hit.getScore());
-			}
-			
-			hitIterator = relDocs.iterator();
-			while(hitIterator.hasNext()) {
-				SearchHit hit = hitIterator.next();
-				FeatureVector docVector = index.getDocVector(hit.getDocID(), stopper);
-				vocab.addAll(docVector.getFeatures());
-				fbDocVectors.add(docVector);
+				hits.add(hitIterator.next());
 			}
 
-			features = new KeyValuePairs();
+			double[] docPosteriors = posteriors(hits);
+			FeatureVector[] fbDocVectors = docVectors(hits);
 
-			
-			Iterator<String> it = vocab.iterator();
-			while(it.hasNext()) {
-				String term = it.next();
+			// term -> slot in weights
+			Map<String,Integer> slots = new HashMap<String,Integer>();
+			List<String> terms = new ArrayList<String>();
+			double[] weights = new double[1024];
 
-				/*
-				if(!term.matches(".*[a-z].*"))
+			for(int k=0; k<fbDocVectors.length; k++) {
+				FeatureVector docVector = fbDocVectors[k];
+				double docLength = docVector.getLength();
+				if(docLength <= 0.0)
 					continue;
-				
-				if(adHocGroom && (term.matches(".*[0-9].*") || term.length()<3)) {
-					continue;
-				}
-				*/
-				
-				
-				double fbWeight = 0.0;
-				
-				
-
-				Iterator<FeatureVector> docIT = fbDocVectors.iterator();
-				k=0;
-				while(docIT.hasNext()) {
-					FeatureVector docVector = docIT.next();
-					double docProb = docVector.getFeatureWeight(term) / docVector.getLength();
-					double docWeight = 1.0;
-					if(docWeights != null)
-						docWeight = docWeights[k];
-					docProb *= rsvs[k++];
-					docProb *= docWeight;
-					fbWeight += docProb;
+				double docWeight = docPosteriors[k] / docLength;
+				if(docWeights != null)
+					docWeight *= docWeights[k];
+
+				Iterator<String> it = docVector.iterator();
+				while(it.hasNext()) {
+					String term = it.next();
+					Integer slot = slots.get(term);
+					if(slot == null) {
+						slot = terms.size();
+						slots.put(term, slot);
+						terms.add(term);
+						if(slot == weights.length)
+							weights = Arrays.copyOf(weights, weights.length * 2);
+					}
+					weights[slot] += docVector.getFeatureWeight(term) * docWeight;
 				}
-				
-				fbWeight /= (double)fbDocVectors.size();
-				
-				KeyValuePair tuple = new KeyValuePair(term, fbWeight);
-				features.add(tuple);
 			}
-			
-			
-			
+
+			features = new KeyValuePairs(topTerms(terms, weights));
+
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
-	
+
+	/**
+	 * @return P(D|Q) for each hit, from its score taken as a log-likelihood
+	 */
+	private double[] posteriors(List<SearchHit> hits) {
+		double[] posteriors = new double[hits.size()];
+		double max = Double.NEGATIVE_INFINITY;
+		for(SearchHit hit : hits) {
+			max = Math.max(max, hit.getScore());
+		}
+		double sum = 0.0;
+		for(int k=0; k<posteriors.length; k++) {
+			posteriors[k] = Math.exp(hits.get(k).getScore() - max);
+			sum += posteriors[k];
+		}
+		for(int k=0; k<posteriors.length; k++) {
+			posteriors[k] /= sum;
+		}
+		return posteriors;
+	}
+
+	private FeatureVector[] docVectors(final List<SearchHit> hits) throws Exception {
+		if(relDocVectors != null && relDocVectors.length == hits.size())
+			return relDocVectors;
+
+		FeatureVector[] vectors = new FeatureVector[hits.size()];
+		if(index instanceof IndexWrapperIndriImpl) {
+			int[] docIDs = new int[hits.size()];
+			for(int k=0; k<docIDs.length; k++) {
+				docIDs[k] = hits.get(k).getDocID();
+			}
+			return ((IndexWrapperIndriImpl)index).getDocVectors(docIDs, stopper);
+		}
+
+		if(numThreads <= 1 || hits.size() <= 1) {
+			for(int k=0; k<vectors.length; k++) {
+				vectors[k] = index.getDocVector(hits.get(k).getDocID(), stopper);
+			}
+			return vectors;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, hits.size()));
+		try {
+			List<Future<FeatureVector>> futures = new ArrayList<Future<FeatureVector>>(hits.size());
+			for(final SearchHit hit : hits) {
+				futures.add(executor.submit(new Callable<FeatureVector>() {
+					public FeatureVector call() throws Exception {
+						return index.getDocVector(hit.getDocID(), stopper);
+					}
+				}));
+			}
+			for(int k=0; k<vectors.length; k++) {
+				vectors[k] = futures.get(k).get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+		return vectors;
+	}
+
+	/**
+	 * @return the fbTermCount heaviest terms, heaviest first; equal weights go to the smaller term
+	 */
+	private List<KeyValuePair> topTerms(List<String> terms, double[] weights) {
+		String[] keys = terms.toArray(new String[terms.size()]);
+		int[] top = TopK.select(weights, keys, keys.length, Math.max(fbTermCount, 1));
+		List<KeyValuePair> pairs = new LinkedList<KeyValuePair>();
+		for(int slot : top) {
+			pairs.add(new KeyValuePair(keys[slot], weights[slot]));
+		}
+		return pairs;
+	}
+
 	public void setGroom(boolean groomModels) {
 		this.adHocGroom = groomModels;
 	}
@@ -99,5 +172,12 @@ public class FeedbackRelevanceModel extends Feedback {
 		this.docWeights = docWeights;
 	}
 
+	/**
+	 * @param numThreads threads used to fetch feedback document vectors from non-Indri indexes
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
 
 }
@@ -29,10 +29,14 @@ public class FeedbackRocchio extends Feedback {
 
 
 			
+			boolean haveVectors = relDocVectors != null && relDocVectors.length == relDocs.size();
 			Iterator<SearchHit> hitIterator = relDocs.iterator();
+			int k = 0;
 			while(hitIterator.hasNext()) {
 				SearchHit hit = hitIterator.next();
-				FeatureVector docVector = index.getDocVector(hit.getDocID(), stopper);
+				// given vectors are copied, since they are reweighted here
+				FeatureVector docVector = haveVectors ? relDocVectors[k++].deepCopy()
+						: index.getDocVector(hit.getDocID(), stopper);
 				docVector.toIdf(index, false);
 				docVector.l2Normalize();
 				vocab.addAll(docVector.getFeatures());
@@ -9,33 +9,77 @@ import edu.gslis.utils.Scorable;
 
 
 
+/**
+ * A scored document.  The metadata map and document vector are only allocated when first used,
+ * so hits that carry just a docno and score stay small.  An epoch stored as a Double under the
+ * "epoch" key is kept in a primitive slot rather than the map.
+ */
 public class SearchHit implements Scorable, Comparable<SearchHit> {
+	private static final String EPOCH_FIELD = "epoch";
 	
 	private String queryName;
 	private String docno;
 	private int docID;
 	private double score;
 	private double length;
+	private double epoch = Double.NaN;
 	private FeatureVector docVector;		// e.g. a term vector representing this doc
+	private boolean docVectorSet = false;
 	private Map<String,Object> metadata;	// e.g. info such as a unix epoch
 	
 	public SearchHit() {
-		metadata = new HashMap<String,Object>();
-		docVector = new FeatureVector(null);
+	}
+	/**
+	 * A shallow copy: the document vector and metadata values are shared, but setting the
+	 * score, length or metadata of one hit leaves the other alone.
+	 */
+	public SearchHit(SearchHit hit) {
+		this.queryName = hit.queryName;
+		this.docno = hit.docno;
+		this.docID = hit.docID;
+		this.score = hit.score;
+		this.length = hit.length;
+		this.epoch = hit.epoch;
+		this.docVector = hit.docVector;
+		this.docVectorSet = hit.docVectorSet;
+		if(hit.metadata != null)
+			this.metadata = new HashMap<String,Object>(hit.metadata);
 	}
 	
 	
 	public Object getMetadataValue(String property) {
-		if(!metadata.containsKey(property)) {
+		if(EPOCH_FIELD.equals(property) && !Double.isNaN(epoch))
+			return epoch;
+		if(metadata == null || !metadata.containsKey(property)) {
 			System.err.println("requested non-existent metadata " + property + " from doc " + docno);
 			System.exit(-1); 
 		} 
 		return metadata.get(property);
 	}
 	public void setMetadataValue(String property, Object value) {
+		if(EPOCH_FIELD.equals(property) && value instanceof Double) {
+			setEpoch((Double)value);
+			return;
+		}
+		if(EPOCH_FIELD.equals(property))
+			epoch = Double.NaN;
+		if(metadata == null)
+			metadata = new HashMap<String,Object>();
 		metadata.put(property, value);
 	}
 	
+	/**
+	 * @return the epoch, or NaN if none was set as a number
+	 */
+	public double getEpoch() {
+		return epoch;
+	}
+	public void setEpoch(double epoch) {
+		this.epoch = epoch;
+		if(metadata != null)
+			metadata.remove(EPOCH_FIELD);
+	}
+	
 	public String getQueryName() {
 		return queryName;
 	}
@@ -56,8 +100,14 @@ public class SearchHit implements Scorable, Comparable<SearchHit> {
 	}
 	public void setFeatureVector(FeatureVector docVector) {
 		this.docVector = docVector;
+		this.docVectorSet = true;
 	}
+	/**
+	 * @return the document vector; an empty one if none was ever set, or null if null was set
+	 */
 	public FeatureVector getFeatureVector() {
+		if(!docVectorSet)
+			setFeatureVector(new FeatureVector(null));
 		return docVector;
 	}
 	public void setLength(double length) {
@@ -1,8 +1,9 @@
 package edu.gslis.searchhits;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import edu.gslis.utils.ScorableComparator;
@@ -20,7 +21,7 @@ public class SearchHits {
 	}
 	
 	public SearchHits() {
-		hits = new LinkedList<SearchHit>();	
+		hits = new ArrayList<SearchHit>();	
 		
 	}
 	
@@ -52,11 +53,74 @@ public class SearchHits {
 	
 	public void crop(int size) {
 	    if (hits.size() > size) {
-	        hits = hits.subList(0, size);
+	        hits = new ArrayList<SearchHit>(hits.subList(0, size));
 	        iter = hits.iterator();
 	    }
 	}
 	
+	/**
+	 * Same result as rank() followed by crop(k), including the order of tied scores, but selects
+	 * the top k in linear time and only sorts those.
+	 * @param k number of hits to keep
+	 */
+	public void topK(int k) {
+		int n = hits.size();
+		if(k >= n) {
+			rank();
+			return;
+		}
+		SearchHit[] all = hits.toArray(new SearchHit[n]);
+		int[] order = new int[n];
+		for(int i=0; i<n; i++)
+			order[i] = i;
+		
+		// quickselect so the k best indexes occupy order[0..k)
+		int lo = 0;
+		int hi = n - 1;
+		while(lo < hi) {
+			int p = partition(all, order, lo, hi, lo + (hi - lo) / 2);
+			if(p == k - 1 || p == k)
+				break;
+			if(p < k)
+				lo = p + 1;
+			else
+				hi = p - 1;
+		}
+		
+		List<SearchHit> top = new ArrayList<SearchHit>(k);
+		int[] best = Arrays.copyOf(order, k);
+		Arrays.sort(best);
+		for(int i=0; i<k; i++)
+			top.add(all[best[i]]);
+		hits = top;
+		rank();
+	}
+	
+	// better first: higher score, then earlier position
+	private static boolean before(SearchHit[] all, int x, int y) {
+		double xs = all[x].getScore();
+		double ys = all[y].getScore();
+		return xs > ys || (xs == ys && x < y);
+	}
+	
+	private static int partition(SearchHit[] all, int[] order, int lo, int hi, int pivotIndex) {
+		int pivot = order[pivotIndex];
+		order[pivotIndex] = order[hi];
+		order[hi] = pivot;
+		int store = lo;
+		for(int i=lo; i<hi; i++) {
+			if(before(all, order[i], pivot)) {
+				int t = order[i];
+				order[i] = order[store];
+				order[store] = t;
+				store++;
+			}
+		}
+		order[hi] = order[store];
+		order[store] = pivot;
+		return store;
+	}
+	
 	public List<SearchHit> hits() {
 	    return hits;
 	}
@@ -0,0 +1,117 @@
+package edu.gslis.searchhits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the k best hits offered to it, in a bounded min-heap, so a rescoring loop never holds
+ * more than k hits.  Among tied scores the earlier offer wins, which matches ranking everything
+ * with SearchHits.rank() and cropping to k.
+ */
+public class TopKSearchHits {
+	private int k;
+	private SearchHit[] heap;
+	private long[] arrival;
+	private int size = 0;
+	private long offered = 0;
+
+	public TopKSearchHits(int k) {
+		this.k = k;
+		this.heap = new SearchHit[Math.max(k, 0)];
+		this.arrival = new long[Math.max(k, 0)];
+	}
+
+	/**
+	 * @return true if the hit was kept, for now
+	 */
+	public boolean offer(SearchHit hit) {
+		long seq = offered++;
+		if(k <= 0)
+			return false;
+		if(size < k) {
+			heap[size] = hit;
+			arrival[size] = seq;
+			siftUp(size++);
+			return true;
+		}
+		// the root is the worst kept hit; a later arrival must beat it outright
+		if(hit.getScore() <= heap[0].getScore())
+			return false;
+		heap[0] = hit;
+		arrival[0] = seq;
+		siftDown(0);
+		return true;
+	}
+
+	/**
+	 * @return the lowest score a new hit must beat once k hits are held, else negative infinity
+	 */
+	public double minScore() {
+		return (size < k) ? Double.NEGATIVE_INFINITY : heap[0].getScore();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return kept hits, best first
+	 */
+	public SearchHits getSearchHits() {
+		Integer[] order = new Integer[size];
+		for(int i=0; i<size; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return worse(x, y) ? 1 : (worse(y, x) ? -1 : 0);
+			}
+		});
+		List<SearchHit> ranked = new ArrayList<SearchHit>(size);
+		for(int i : order)
+			ranked.add(heap[i]);
+		return new SearchHits(ranked);
+	}
+
+	// true if x is worse than y: lower score, or tied and offered later
+	private boolean worse(int x, int y) {
+		double xs = heap[x].getScore();
+		double ys = heap[y].getScore();
+		return xs < ys || (xs == ys && arrival[x] > arrival[y]);
+	}
+
+	private void siftUp(int i) {
+		while(i > 0) {
+			int parent = (i - 1) / 2;
+			if(!worse(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while(true) {
+			int left = 2 * i + 1;
+			if(left >= size)
+				break;
+			int worst = left;
+			if(left + 1 < size && worse(left + 1, left))
+				worst = left + 1;
+			if(!worse(worst, i))
+				break;
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		SearchHit h = heap[i];
+		heap[i] = heap[j];
+		heap[j] = h;
+		long a = arrival[i];
+		arrival[i] = arrival[j];
+		arrival[j] = a;
+	}
+}
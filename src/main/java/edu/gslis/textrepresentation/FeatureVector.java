@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -21,8 +20,8 @@ import org.apache.lucene.analysis.util.CharArraySet;
 
 import edu.gslis.indexes.IndexWrapper;
 import edu.gslis.utils.KeyValuePair;
-import edu.gslis.utils.ScorableComparator;
 import edu.gslis.utils.Stopper;
+import edu.gslis.utils.TopK;
 
 
 
@@ -34,7 +33,7 @@ import edu.gslis.utils.Stopper;
  *
  */
 public class FeatureVector  {
-	private static StandardAnalyzer analyzer;	
+	private StandardAnalyzer analyzer;	
 	private Map<String, Double> features;
 	private Stopper stopper;
 	private double length = 0.0;
@@ -44,12 +43,6 @@ public class FeatureVector  {
 	public FeatureVector(String text, Stopper stopper) {
 		this.stopper = stopper;
 		
-		if(stopper==null || stopper.asSet().size()==0) {
-			analyzer = new StandardAnalyzer();
-		} else {
-			CharArraySet charArraySet = new CharArraySet(stopper.asSet(), true);
-			analyzer = new StandardAnalyzer(charArraySet);
-		}
 		features = new HashMap<String, Double>();
 		List<String> terms = this.analyze(text);
 		Iterator<String> termsIt = terms.iterator();
@@ -68,12 +61,6 @@ public class FeatureVector  {
 
 	public FeatureVector(Stopper stopper) {
 		this.stopper = stopper;
-		if(stopper==null || stopper.asSet().size()==0) {
-			analyzer = new StandardAnalyzer();
-		} else {
-			CharArraySet charArraySet = new CharArraySet(stopper.asSet(), true);
-			analyzer = new StandardAnalyzer(charArraySet);
-		}
 		features = new HashMap<String,Double>();
 	}
 
@@ -140,17 +127,17 @@ public class FeatureVector  {
 		}
 	}
 
+	/**
+	 * Keep the k heaviest features; equal weights go to the smaller term.
+	 */
 	public void clip(int k) {
-		List<KeyValuePair> kvpList = getOrderedFeatures();
+		List<KeyValuePair> kvpList = getOrderedFeatures(k);
 
 		Iterator<KeyValuePair> it = kvpList.iterator();
 		
 		Map<String,Double> newMap = new HashMap<String,Double>(k);
-		int i=0;
 		length = 0;
 		while(it.hasNext()) {
-			if(i++ >= k)
-				break;
 			KeyValuePair kvp = it.next();
 			length += kvp.getScore();
 			newMap.put((String)kvp.getKey(), kvp.getScore());
@@ -278,28 +265,34 @@ public class FeatureVector  {
 		return this.toString(features.size());
 	}
 
-	private List<KeyValuePair> getOrderedFeatures() {
-		List<KeyValuePair> kvpList = new ArrayList<KeyValuePair>(features.size());
+	/**
+	 * @return the k heaviest features, heaviest first; equal weights go to the smaller term
+	 */
+	private List<KeyValuePair> getOrderedFeatures(int k) {
+		String[] terms = new String[features.size()];
+		double[] values = new double[terms.length];
+		int i = 0;
 		Iterator<String> featureIterator = features.keySet().iterator();
 		while(featureIterator.hasNext()) {
-			String feature = featureIterator.next();
-			double value   = features.get(feature);
-			KeyValuePair keyValuePair = new KeyValuePair(feature, value);
-			kvpList.add(keyValuePair);
+			terms[i] = featureIterator.next();
+			values[i] = features.get(terms[i]);
+			i++;
+		}
+		
+		int[] top = TopK.select(values, terms, k);
+		List<KeyValuePair> kvpList = new ArrayList<KeyValuePair>(top.length);
+		for(int j : top) {
+			kvpList.add(new KeyValuePair(terms[j], values[j]));
 		}
-		ScorableComparator comparator = new ScorableComparator(true);
-		Collections.sort(kvpList, comparator);
-
 		return kvpList;
 	}
 
 	public String toString(int k) {
 		DecimalFormat format = new DecimalFormat("#.#########");
 		StringBuilder b = new StringBuilder();
-		List<KeyValuePair> kvpList = getOrderedFeatures();
+		List<KeyValuePair> kvpList = getOrderedFeatures(k);
 		Iterator<KeyValuePair> it = kvpList.iterator();
-		int i=0;
-		while(it.hasNext() && i++ < k) {
+		while(it.hasNext()) {
 			KeyValuePair pair = it.next();
 			b.append(format.format(pair.getScore()) + " " + pair.getKey() + "\n");
 		}
@@ -309,11 +302,25 @@ public class FeatureVector  {
 
 
 	// UTILS
+	
+	// Built on first use, so vectors that are never given text don't pay for an analyzer
+	private StandardAnalyzer getAnalyzer() {
+		if(analyzer == null) {
+			if(stopper==null || stopper.asSet().size()==0) {
+				analyzer = new StandardAnalyzer();
+			} else {
+				CharArraySet charArraySet = new CharArraySet(stopper.asSet(), true);
+				analyzer = new StandardAnalyzer(charArraySet);
+			}
+		}
+		return analyzer;
+	}
+	
 	private List<String> analyze(String text) {
 		List<String> result = new LinkedList<String>();
 		try {
 			TokenStream stream = null;
-			stream = analyzer.tokenStream("text", new StringReader(text));
+			stream = getAnalyzer().tokenStream("text", new StringReader(text));
 
 			CharTermAttribute charTermAttribute = stream.addAttribute(CharTermAttribute.class);
 			stream.reset();
@@ -321,6 +328,8 @@ public class FeatureVector  {
 				String term = charTermAttribute.toString();
 				result.add(term);
 			}
+			stream.end();
+			stream.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
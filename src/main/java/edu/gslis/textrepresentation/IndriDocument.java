@@ -71,6 +71,37 @@ public class IndriDocument {
 
 	public FeatureVector getFeatureVector(int docID, Stopper stopper) {
 		String[] toks = getDocToks(docID);
+		return toFeatureVector(toks, stopper);
+	}
+	
+	/**
+	 * gets feature vectors for many documents with a single documentVectors() call.
+	 * @param docIDs indri-internal numeric IDs of the documents
+	 * @param stopper Stopper, or null
+	 * @return one vector per docID, in the same order
+	 */
+	public FeatureVector[] getFeatureVectors(int[] docIDs, Stopper stopper) {
+		FeatureVector[] vectors = new FeatureVector[docIDs.length];
+		if(docIDs.length == 0)
+			return vectors;
+		try {
+			DocumentVector[] dvs = env.documentVectors(docIDs);
+			for(int i=0; i<dvs.length; i++) {
+				String[] stems = dvs[i].stems;
+				int[] positions = dvs[i].positions;
+				String[] toks = new String[positions.length];
+				for(int j=0; j<positions.length; j++) {
+					toks[j] = stems[positions[j]];
+				}
+				vectors[i] = toFeatureVector(toks, stopper);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return vectors;
+	}
+	
+	private FeatureVector toFeatureVector(String[] toks, Stopper stopper) {
 		FeatureVector features = new FeatureVector(stopper);
 		for(String tok : toks) {
 			if(tok.equals("[OOV]"))
@@ -146,6 +177,32 @@ public class IndriDocument {
 		env = e;
 	}
 	
+    /**
+     * gets the token sequences of many documents with a single documentVectors() call.
+     * @param docIDs indri-internal numeric IDs of the documents
+     * @return one list per docID, in the same order, without [OOV] tokens
+     */
+    public List<List<String>> getTerms(int[] docIDs) {
+        List<List<String>> docs = new ArrayList<List<String>>(docIDs.length);
+        if(docIDs.length == 0)
+            return docs;
+        try {
+            DocumentVector[] dvs = env.documentVectors(docIDs);
+            for(DocumentVector dv : dvs) {
+                List<String> terms = new ArrayList<String>(dv.positions.length);
+                for(int position : dv.positions) {
+                    if(dv.stems[position].equals("[OOV]"))
+                        continue;
+                    terms.add(dv.stems[position]);
+                }
+                docs.add(terms);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return docs;
+    }
+
 	/**
 	 * Returns an ordered list of terms for the specified document.
 	 * @param docID
@@ -0,0 +1,66 @@
+package edu.gslis.textrepresentation;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * An immutable term vector as parallel arrays of term ids, ascending, and weights, with its L2
+ * norm computed once.  Built from a FeatureVector for repeated similarity computations; see
+ * TextSimilarityMeasure.
+ */
+public class SparseVector {
+	private final int[] ids;
+	private final double[] weights;
+	private final double norm;
+
+	public SparseVector(FeatureVector fv, Vocabulary vocabulary) {
+		int n = fv.getFeatureCount();
+		String[] terms = new String[n];
+		// (id, position) pairs, so one primitive sort orders both arrays
+		long[] order = new long[n];
+		int i = 0;
+		Iterator<String> it = fv.iterator();
+		while(it.hasNext()) {
+			terms[i] = it.next();
+			order[i] = ((long)vocabulary.getId(terms[i]) << 32) | i;
+			i++;
+		}
+		Arrays.sort(order);
+
+		ids = new int[n];
+		weights = new double[n];
+		double sumSquares = 0.0;
+		for(int k=0; k<n; k++) {
+			ids[k] = (int)(order[k] >>> 32);
+			weights[k] = fv.getFeatureWeight(terms[(int)order[k]]);
+			sumSquares += Math.pow(weights[k], 2.0);
+		}
+		norm = Math.sqrt(sumSquares);
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public int getId(int k) {
+		return ids[k];
+	}
+
+	public double getWeight(int k) {
+		return weights[k];
+	}
+
+	/**
+	 * @return largest term id, or -1 if the vector is empty
+	 */
+	public int getMaxId() {
+		return (ids.length == 0) ? -1 : ids[ids.length - 1];
+	}
+
+	/**
+	 * @return L2 norm
+	 */
+	public double getNorm() {
+		return norm;
+	}
+}
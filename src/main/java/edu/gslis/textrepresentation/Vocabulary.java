@@ -0,0 +1,44 @@
+package edu.gslis.textrepresentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns consecutive integer ids to terms, in order of first request.  Vectors compared with
+ * one another must share a Vocabulary.  Safe to share between threads.
+ */
+public class Vocabulary {
+	private Map<String,Integer> ids = new HashMap<String,Integer>();
+	private List<String> terms = new ArrayList<String>();
+
+	/**
+	 * @return the term's id, assigning the next one if the term is new
+	 */
+	public synchronized int getId(String term) {
+		Integer id = ids.get(term);
+		if(id == null) {
+			id = terms.size();
+			ids.put(term, id);
+			terms.add(term);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the term's id, or -1 if it has none
+	 */
+	public synchronized int lookup(String term) {
+		Integer id = ids.get(term);
+		return (id == null) ? -1 : id;
+	}
+
+	public synchronized String getTerm(int id) {
+		return terms.get(id);
+	}
+
+	public synchronized int size() {
+		return terms.size();
+	}
+}
@@ -1,5 +1,6 @@
 package edu.gslis.utils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -30,6 +31,26 @@ public class KeyValuePairs {
 		Collections.sort(tuples, comparator);
 	}
 	
+	/**
+	 * @return the k highest-scoring pairs, highest first, leaving this list's order alone.
+	 * Equal scores go to the smaller key.
+	 */
+	public List<KeyValuePair> top(int k) {
+		KeyValuePair[] pairs = tuples.toArray(new KeyValuePair[tuples.size()]);
+		double[] scores = new double[pairs.length];
+		String[] keys = new String[pairs.length];
+		for(int i=0; i<pairs.length; i++) {
+			scores[i] = pairs[i].getScore();
+			keys[i] = pairs[i].getKey();
+		}
+		int[] top = TopK.select(scores, keys, k);
+		List<KeyValuePair> result = new ArrayList<KeyValuePair>(top.length);
+		for(int i : top) {
+			result.add(pairs[i]);
+		}
+		return result;
+	}
+	
 	public KeyValuePair get(int i) throws Exception {
 		if(tuples.size() <= i)
 			throw new Exception("can't remove " + i + "th KeyValuePair!");
@@ -0,0 +1,96 @@
+package edu.gslis.utils;
+
+/**
+ * Picks the k largest of n scores with a bounded heap of indexes: O(n log k) time, O(k) space,
+ * no boxing.  Equal scores are ordered by key (ascending) when keys are given, otherwise by
+ * index, so the result does not depend on the order of a HashMap or a sort's stability.
+ * Scores compare as Double.compare does.
+ */
+public class TopK {
+
+	/**
+	 * @return indexes of the k largest scores, largest first; equal scores by index
+	 */
+	public static int[] select(double[] scores, int k) {
+		return select(scores, null, scores.length, k);
+	}
+
+	/**
+	 * @return indexes of the k largest scores, largest first; equal scores by key
+	 */
+	public static int[] select(double[] scores, String[] keys, int k) {
+		return select(scores, keys, scores.length, k);
+	}
+
+	/**
+	 * @param n consider only scores[0..n)
+	 * @param keys tie-break keys parallel to scores, or null to break ties by index
+	 * @return indexes of the k largest of the first n scores, largest first
+	 */
+	public static int[] select(double[] scores, String[] keys, int n, int k) {
+		k = Math.max(0, Math.min(k, n));
+		// min-heap: the worst kept index at heap[0]
+		int[] heap = new int[k];
+		int size = 0;
+		for(int i=0; i<n && k>0; i++) {
+			if(size < k) {
+				heap[size] = i;
+				siftUp(heap, size++, scores, keys);
+			} else if(better(i, heap[0], scores, keys)) {
+				heap[0] = i;
+				siftDown(heap, 0, size, scores, keys);
+			}
+		}
+		// pop the worst to the back
+		for(int end=size-1; end>0; end--) {
+			int worst = heap[0];
+			heap[0] = heap[end];
+			heap[end] = worst;
+			siftDown(heap, 0, end, scores, keys);
+		}
+		return heap;
+	}
+
+	/**
+	 * @return true if i ranks ahead of j
+	 */
+	private static boolean better(int i, int j, double[] scores, String[] keys) {
+		int c = Double.compare(scores[i], scores[j]);
+		if(c != 0)
+			return c > 0;
+		if(keys != null) {
+			c = keys[i].compareTo(keys[j]);
+			if(c != 0)
+				return c < 0;
+		}
+		return i < j;
+	}
+
+	private static void siftUp(int[] heap, int pos, double[] scores, String[] keys) {
+		int x = heap[pos];
+		while(pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if(!better(heap[parent], x, scores, keys))
+				break;
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = x;
+	}
+
+	private static void siftDown(int[] heap, int pos, int size, double[] scores, String[] keys) {
+		int x = heap[pos];
+		while(true) {
+			int child = 2 * pos + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && better(heap[child], heap[child + 1], scores, keys))
+				child++;
+			if(!better(x, heap[child], scores, keys))
+				break;
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = x;
+	}
+}
@@ -0,0 +1,453 @@
+package edu.gslis.utils.main;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import streamcorpus_v3.ContentItem;
+import streamcorpus_v3.StreamItem;
+import streamcorpus_v3.StreamTime;
+
+import com.google.gson.JsonObject;
+
+import edu.gslis.lucene.indexer.Indexer;
+import edu.gslis.queries.GQueries;
+import edu.gslis.queries.GQueriesJsonImpl;
+import edu.gslis.queries.GQuery;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Writes a synthetic collection for load testing: documents whose terms are drawn from a Zipf
+ * distribution over a made-up vocabulary, a topic set, and qrels.  Into the output directory go
+ *
+ *   corpus/        chunks of -docsPerFile documents, as trectext files, tgz files of JSON
+ *                  documents, or gzipped StreamCorpus thrift files (-format)
+ *   build_index.yml  a LuceneBuildIndex configuration for the corpus (index in index/)
+ *   queries.json   GQueries JSON topics of -queryLength mid-frequency terms
+ *   qrels          -relPerQuery relevant and as many judged non-relevant documents per topic
+ *
+ * Each topic's terms are planted -plant times in its relevant documents, so a reasonable model
+ * ranks them highly and evaluation numbers mean something.  Documents are generated one at a
+ * time, so memory does not grow with -docs; the same -seed always writes the same files.
+ */
+public class GenerateSyntheticCollection {
+	public static final String FORMAT_TRECTEXT = Indexer.FORMAT_TRECTEXT;
+	public static final String FORMAT_JSON = Indexer.FORMAT_JSON;
+	public static final String FORMAT_STREAMCORPUS = Indexer.FORMAT_STREAMCORPUS;
+
+	public static final String DOCNO_PREFIX = "SYN";
+	public static final long FIRST_EPOCH = 946684800L;	// 2000-01-01
+	public static final int WORDS_PER_LINE = 16;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String CONSONANTS = "bdfgklmnprstvz";
+	private static final String VOWELS = "aiou";	// no e, which stemmers strip
+
+	String format = FORMAT_TRECTEXT;
+	long numDocs = 10000;
+	int vocabSize = 100000;
+	double zipfExponent = 1.0;
+	int avgDocLength = 300;
+	int docsPerFile = 10000;
+	int numQueries = 50;
+	int queryLength = 3;
+	int relPerQuery = 20;
+	int plant = 3;
+	long seed = 1;
+
+	String[] vocab;
+	ZipfSampler sampler;
+
+	// relevant topics of each planted document
+	Map<Long, List<Integer>> plantedTopics = new HashMap<Long, List<Integer>>();
+	int[][] topicTerms;
+
+	public static void main(String[] args) throws Exception {
+		Options options = createOptions();
+		CommandLineParser parser = new GnuParser();
+		CommandLine cmd = parser.parse(options, args);
+		if (!cmd.hasOption("output")) {
+			new HelpFormatter().printHelp(GenerateSyntheticCollection.class.getName(), options);
+			System.exit(-1);
+		}
+
+		GenerateSyntheticCollection generator = new GenerateSyntheticCollection();
+		generator.format = cmd.getOptionValue("format", FORMAT_TRECTEXT);
+		generator.numDocs = Long.parseLong(cmd.getOptionValue("docs", "10000"));
+		generator.vocabSize = Integer.parseInt(cmd.getOptionValue("vocab", "100000"));
+		generator.zipfExponent = Double.parseDouble(cmd.getOptionValue("zipf", "1.0"));
+		generator.avgDocLength = Integer.parseInt(cmd.getOptionValue("docLength", "300"));
+		generator.docsPerFile = Integer.parseInt(cmd.getOptionValue("docsPerFile", "10000"));
+		generator.numQueries = Integer.parseInt(cmd.getOptionValue("queries", "50"));
+		generator.queryLength = Integer.parseInt(cmd.getOptionValue("queryLength", "3"));
+		generator.relPerQuery = Integer.parseInt(cmd.getOptionValue("relPerQuery", "20"));
+		generator.plant = Integer.parseInt(cmd.getOptionValue("plant", "3"));
+		generator.seed = Long.parseLong(cmd.getOptionValue("seed", "1"));
+
+		generator.generate(new File(cmd.getOptionValue("output")));
+	}
+
+	public static Options createOptions() {
+		Options options = new Options();
+		options.addOption("output", true, "Output directory");
+		options.addOption("format", true, "trectext, json or streamcorpus (default trectext)");
+		options.addOption("docs", true, "Number of documents (default 10000)");
+		options.addOption("vocab", true, "Vocabulary size (default 100000)");
+		options.addOption("zipf", true, "Zipf exponent of term frequencies (default 1.0)");
+		options.addOption("docLength", true, "Mean document length in tokens (default 300)");
+		options.addOption("docsPerFile", true, "Documents per corpus file (default 10000)");
+		options.addOption("queries", true, "Number of topics (default 50)");
+		options.addOption("queryLength", true, "Terms per topic (default 3)");
+		options.addOption("relPerQuery", true, "Relevant documents per topic (default 20)");
+		options.addOption("plant", true, "Occurrences of each topic term in its relevant documents (default 3)");
+		options.addOption("seed", true, "Random seed (default 1)");
+		return options;
+	}
+
+	public void generate(File outputDir) throws Exception {
+		if (!FORMAT_TRECTEXT.equals(format) && !FORMAT_JSON.equals(format) && !FORMAT_STREAMCORPUS.equals(format))
+			throw new Exception("Unsupported format " + format);
+
+		File corpusDir = new File(outputDir, "corpus");
+		corpusDir.mkdirs();
+
+		Random random = new Random(seed);
+		vocab = new String[vocabSize];
+		for (int rank = 0; rank < vocabSize; rank++) {
+			vocab[rank] = word(rank);
+		}
+		sampler = new ZipfSampler(vocabSize, zipfExponent);
+
+		chooseTopics(random);
+		writeQueries(new File(outputDir, "queries.json"));
+		writeQrels(new File(outputDir, "qrels"), random);
+		writeBuildConfig(new File(outputDir, "build_index.yml"), corpusDir, new File(outputDir, "index"));
+
+		long start = System.currentTimeMillis();
+		for (long first = 0, chunk = 0; first < numDocs; first += docsPerFile, chunk++) {
+			long last = Math.min(first + docsPerFile, numDocs);
+			if (FORMAT_TRECTEXT.equals(format))
+				writeTrecText(new File(corpusDir, String.format("chunk-%06d.trec", chunk)), first, last, random);
+			else if (FORMAT_JSON.equals(format))
+				writeJson(new File(corpusDir, String.format("chunk-%06d.tgz", chunk)), first, last, random);
+			else
+				writeStreamCorpus(new File(corpusDir, String.format("chunk-%06d.sc.gz", chunk)), first, last, random);
+			System.err.println("Wrote " + last + " documents in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Topics draw their terms uniformly from the mid-frequency ranks, and their relevant
+	 * documents uniformly from the collection.
+	 */
+	void chooseTopics(Random random) {
+		int minRank = Math.min(50, vocabSize / 10);
+		int maxRank = Math.max(minRank + queryLength, Math.min(vocabSize, 5000));
+		topicTerms = new int[numQueries][queryLength];
+		for (int q = 0; q < numQueries; q++) {
+			Set<Integer> terms = new HashSet<Integer>();
+			for (int t = 0; t < queryLength; t++) {
+				int rank;
+				do {
+					rank = minRank + random.nextInt(Math.min(maxRank, vocabSize) - minRank);
+				} while (!terms.add(rank) && terms.size() < vocabSize);
+				topicTerms[q][t] = rank;
+			}
+
+			Set<Long> relDocs = new HashSet<Long>();
+			while (relDocs.size() < Math.min(relPerQuery, numDocs)) {
+				long docNum = (long)(random.nextDouble() * numDocs);
+				if (relDocs.add(docNum)) {
+					List<Integer> topics = plantedTopics.get(docNum);
+					if (topics == null) {
+						topics = new ArrayList<Integer>(1);
+						plantedTopics.put(docNum, topics);
+					}
+					topics.add(q);
+				}
+			}
+		}
+	}
+
+	void writeQueries(File file) throws IOException {
+		GQueries queries = new GQueriesJsonImpl();
+		for (int q = 0; q < numQueries; q++) {
+			StringBuilder text = new StringBuilder();
+			FeatureVector featureVector = new FeatureVector(null);
+			for (int rank : topicTerms[q]) {
+				if (text.length() > 0)
+					text.append(' ');
+				text.append(vocab[rank]);
+				featureVector.addTerm(vocab[rank], 1.0);
+			}
+			GQuery query = new GQuery();
+			query.setTitle(topicName(q));
+			query.setText(text.toString());
+			query.setFeatureVector(featureVector);
+			queries.addQuery(query);
+		}
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+		out.write(queries.toString());
+		out.close();
+	}
+
+	/**
+	 * Relevant documents are judged 1; as many other random documents are judged 0.
+	 */
+	void writeQrels(File file, Random random) throws IOException {
+		List<List<Long>> relDocs = new ArrayList<List<Long>>(numQueries);
+		for (int q = 0; q < numQueries; q++) {
+			relDocs.add(new ArrayList<Long>());
+		}
+		for (Map.Entry<Long, List<Integer>> entry : plantedTopics.entrySet()) {
+			for (int q : entry.getValue()) {
+				relDocs.get(q).add(entry.getKey());
+			}
+		}
+
+		Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), UTF8);
+		for (int q = 0; q < numQueries; q++) {
+			List<Long> rel = relDocs.get(q);
+			Collections.sort(rel);
+			for (long docNum : rel) {
+				out.write(topicName(q) + " 0 " + docno(docNum) + " 1\n");
+			}
+			Set<Long> judged = new HashSet<Long>(rel);
+			int nonRel = (int)Math.min(rel.size(), numDocs - rel.size());
+			for (int i = 0; i < nonRel; i++) {
+				long docNum = (long)(random.nextDouble() * numDocs);
+				if (judged.add(docNum))
+					out.write(topicName(q) + " 0 " + docno(docNum) + " 0\n");
+			}
+		}
+		out.close();
+	}
+
+	void writeBuildConfig(File file, File corpusDir, File indexDir) throws IOException {
+		String docnoSource = "source: element\n     element: DOCNO";
+		String epochSource = "source: element\n     element: EPOCH";
+		String textSource = "source: element\n     element: TEXT";
+		String filter = "*.trec";
+		if (FORMAT_JSON.equals(format)) {
+			docnoSource = "source: element\n     element: docno";
+			epochSource = "source: element\n     element: epoch";
+			textSource = "source: element\n     element: text";
+			filter = "*.tgz";
+		} else if (FORMAT_STREAMCORPUS.equals(format)) {
+			docnoSource = "source: doc_id";
+			epochSource = "source: timestamp";
+			textSource = "source: body";
+			filter = "*.sc.gz";
+		}
+
+		Writer out = new FileWriter(file);
+		out.write("indexPath: " + indexDir.getAbsolutePath() + "\n");
+		out.write("corpus:\n");
+		out.write("   path: " + corpusDir.getAbsolutePath() + "\n");
+		out.write("   filter: \"" + filter + "\"\n");
+		out.write("   type: " + format + "\n");
+		out.write("fields:\n");
+		out.write("   - name: docno\n");
+		out.write("     " + docnoSource + "\n");
+		out.write("     type: string\n");
+		out.write("     storedTermVectors: false\n");
+		out.write("   - name: epoch\n");
+		out.write("     " + epochSource + "\n");
+		out.write("     type: long\n");
+		out.write("     storedTermVectors: false\n");
+		out.write("   - name: text\n");
+		out.write("     " + textSource + "\n");
+		out.write("     type: text\n");
+		out.write("     stored: false\n");
+		out.close();
+	}
+
+	void writeTrecText(File file, long first, long last, Random random) throws IOException {
+		Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), 1 << 20), UTF8);
+		StringBuilder doc = new StringBuilder(1 << 16);
+		for (long docNum = first; docNum < last; docNum++) {
+			doc.setLength(0);
+			doc.append("<DOC>\n<DOCNO>").append(docno(docNum)).append("</DOCNO>\n");
+			doc.append("<EPOCH>").append(epoch(docNum)).append("</EPOCH>\n<TEXT>\n");
+			appendText(doc, docNum, random);
+			doc.append("\n</TEXT>\n</DOC>\n");
+			out.append(doc);
+		}
+		out.close();
+	}
+
+	void writeJson(File file, long first, long last, Random random) throws IOException {
+		TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 20)));
+		StringBuilder text = new StringBuilder(1 << 16);
+		for (long docNum = first; docNum < last; docNum++) {
+			text.setLength(0);
+			appendText(text, docNum, random);
+			JsonObject json = new JsonObject();
+			json.addProperty("docno", docno(docNum));
+			json.addProperty("epoch", epoch(docNum));
+			json.addProperty("text", text.toString());
+			byte[] bytes = json.toString().getBytes(UTF8);
+
+			TarArchiveEntry entry = new TarArchiveEntry(docno(docNum) + ".json");
+			entry.setSize(bytes.length);
+			out.putArchiveEntry(entry);
+			out.write(bytes);
+			out.closeArchiveEntry();
+		}
+		out.close();
+	}
+
+	void writeStreamCorpus(File file, long first, long last, Random random) throws Exception {
+		OutputStream out = new GzipCompressorOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+		TIOStreamTransport transport = new TIOStreamTransport(out);
+		TBinaryProtocol protocol = new TBinaryProtocol(transport);
+		StringBuilder text = new StringBuilder(1 << 16);
+		for (long docNum = first; docNum < last; docNum++) {
+			text.setLength(0);
+			appendText(text, docNum, random);
+			ContentItem body = new ContentItem();
+			body.setClean_visible(text.toString());
+			StreamItem item = new StreamItem();
+			item.setStream_id(docno(docNum));
+			item.setDoc_id(docno(docNum));
+			item.setSource("synthetic");
+			item.setStream_time(new StreamTime(epoch(docNum), null));
+			item.setBody(body);
+			item.write(protocol);
+		}
+		transport.flush();
+		out.close();
+	}
+
+	/**
+	 * Zipf-distributed terms with a uniformly distributed length around avgDocLength, with the
+	 * terms of any topic the document is relevant to overwriting random positions.
+	 */
+	void appendText(StringBuilder text, long docNum, Random random) {
+		int length = Math.max(1, avgDocLength / 2 + random.nextInt(avgDocLength + 1));
+		int[] terms = new int[length];
+		for (int i = 0; i < length; i++) {
+			terms[i] = sampler.sample(random);
+		}
+		List<Integer> topics = plantedTopics.get(docNum);
+		if (topics != null) {
+			for (int q : topics) {
+				for (int rank : topicTerms[q]) {
+					for (int p = 0; p < plant; p++) {
+						terms[random.nextInt(length)] = rank;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			if (i > 0)
+				text.append((i % WORDS_PER_LINE == 0) ? '\n' : ' ');
+			text.append(vocab[terms[i]]);
+		}
+	}
+
+	/**
+	 * A pronounceable word for each rank, unique: two or more consonant-vowel syllables, in
+	 * bijective base syllables.size.
+	 */
+	static String word(int rank) {
+		int base = CONSONANTS.length() * VOWELS.length();
+		StringBuilder word = new StringBuilder();
+		long n = rank + (long)base + 1;	// skip the one-syllable words
+		while (n > 0) {
+			n--;
+			int syllable = (int)(n % base);
+			word.append(VOWELS.charAt(syllable % VOWELS.length()));
+			word.append(CONSONANTS.charAt(syllable / VOWELS.length()));
+			n /= base;
+		}
+		return word.reverse().toString();
+	}
+
+	static String docno(long docNum) {
+		return String.format("%s-%010d", DOCNO_PREFIX, docNum);
+	}
+
+	static String topicName(int q) {
+		return String.valueOf(q + 1);
+	}
+
+	static long epoch(long docNum) {
+		return FIRST_EPOCH + docNum * 60;
+	}
+
+	/**
+	 * P(rank r) proportional to 1 / (r+1)^s, sampled in constant time with Walker's alias method.
+	 */
+	static class ZipfSampler {
+		double[] prob;
+		int[] alias;
+
+		ZipfSampler(int n, double s) {
+			double[] p = new double[n];
+			double sum = 0;
+			for (int r = 0; r < n; r++) {
+				p[r] = 1.0 / Math.pow(r + 1, s);
+				sum += p[r];
+			}
+			prob = new double[n];
+			alias = new int[n];
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int numSmall = 0, numLarge = 0;
+			for (int r = 0; r < n; r++) {
+				p[r] = p[r] * n / sum;
+				if (p[r] < 1.0)
+					small[numSmall++] = r;
+				else
+					large[numLarge++] = r;
+			}
+			while (numSmall > 0 && numLarge > 0) {
+				int less = small[--numSmall];
+				int more = large[--numLarge];
+				prob[less] = p[less];
+				alias[less] = more;
+				p[more] = (p[more] + p[less]) - 1.0;
+				if (p[more] < 1.0)
+					small[numSmall++] = more;
+				else
+					large[numLarge++] = more;
+			}
+			while (numLarge > 0)
+				prob[large[--numLarge]] = 1.0;
+			while (numSmall > 0)
+				prob[small[--numSmall]] = 1.0;
+		}
+
+		int sample(Random random) {
+			int r = random.nextInt(prob.length);
+			return (random.nextDouble() < prob[r]) ? r : alias[r];
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package edu.gslis.docscoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * AllPairsSimilarity must keep exactly the pairs whose TextSimilarityMeasure.cosine reaches the
+ * threshold, with the same values.
+ */
+public class TestAllPairsSimilarity {
+    private static final double DELTA = 1e-9;
+
+    // random documents over a Zipf-ish vocabulary, then an empty one and one with a NaN weight
+    private static List<FeatureVector> vectors() {
+        Random random = new Random(17);
+        List<FeatureVector> vectors = new ArrayList<FeatureVector>();
+        for (int i = 0; i < 60; i++) {
+            FeatureVector fv = new FeatureVector(null);
+            int length = 5 + random.nextInt(40);
+            for (int k = 0; k < length; k++) {
+                int rank = (int)Math.floor(Math.pow(200, random.nextDouble()));
+                fv.addTerm("t" + rank);
+            }
+            vectors.add(fv);
+        }
+        vectors.add(new FeatureVector(null));
+        FeatureVector nan = new FeatureVector(null);
+        nan.addTerm("t1", Double.NaN);
+        nan.addTerm("t2", 1.0);
+        vectors.add(nan);
+        return vectors;
+    }
+
+    private static void assertMatchesPairwise(List<FeatureVector> vectors, double threshold,
+            SimilarityMatrix matrix) {
+        assertEquals(vectors.size(), matrix.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            for (int j = 0; j < vectors.size(); j++) {
+                if (i == j)
+                    continue;
+                double cosine = TextSimilarityMeasure.cosine(vectors.get(i), vectors.get(j), true);
+                if (cosine > 0.0 && cosine >= threshold + DELTA)
+                    assertEquals(cosine, matrix.get(i, j), DELTA);
+                else if (cosine < threshold - DELTA || cosine <= 0.0)
+                    assertEquals(0.0, matrix.get(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testThresholdZero() throws Exception {
+        List<FeatureVector> vectors = vectors();
+        AllPairsSimilarity allPairs = new AllPairsSimilarity();
+        SimilarityMatrix matrix = allPairs.compute(vectors);
+        assertMatchesPairwise(vectors, 0.0, matrix);
+        assertTrue(matrix.getNumEntries() > 0);
+
+        int n = vectors.size();
+        assertEquals(0, matrix.getColumns(n - 2).length);
+        assertEquals(0, matrix.getColumns(n - 1).length);
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        List<FeatureVector> vectors = vectors();
+        AllPairsSimilarity allPairs = new AllPairsSimilarity();
+        allPairs.setThreshold(0.3);
+        assertMatchesPairwise(vectors, 0.3, allPairs.compute(vectors));
+
+        allPairs.setNumThreads(4);
+        assertMatchesPairwise(vectors, 0.3, allPairs.compute(vectors));
+    }
+
+    @Test
+    public void testThresholdAboveEveryPair() throws Exception {
+        List<FeatureVector> vectors = vectors();
+        AllPairsSimilarity allPairs = new AllPairsSimilarity();
+        allPairs.setThreshold(1.01);
+        assertEquals(0, allPairs.compute(vectors).getNumEntries());
+    }
+}
@@ -0,0 +1,170 @@
+package edu.gslis.docscoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.gslis.docscoring.smart.DocumentNormCache;
+import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.indexes.IndexWrapper;
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * Scores must match what ScorerSMART gave when it weighted and normalized the hit's vector in
+ * place, however often a hit is scored and whatever query it was scored for before.
+ */
+public class TestScorerSMART {
+    private static final double DELTA = 1e-12;
+
+    private static CollectionStats stats() {
+        CollectionStats stats = new CollectionStats() {
+            {
+                docCount = 100;
+                tokCount = 10000;
+                termTypeCount = 500;
+            }
+            public double termCount(String term) {
+                return 10;
+            }
+            public double docCount(String term) {
+                return term.length();
+            }
+            public void setStatSource(String statSource) {
+            }
+        };
+        return stats;
+    }
+
+    private static ScorerSMART scorer(String spec) {
+        ScorerSMART scorer = new ScorerSMART();
+        scorer.setCollectionStats(stats());
+        scorer.setParameter(ScorerSMART.PARAM_SMART_SPEC, spec);
+        scorer.init();
+        return scorer;
+    }
+
+    private static FeatureVector vector(String text) {
+        FeatureVector fv = new FeatureVector(null);
+        for (String term : text.split(" ")) {
+            fv.addTerm(term);
+        }
+        return fv;
+    }
+
+    private static GQuery query(String title, String text) {
+        GQuery query = new GQuery();
+        query.setTitle(title);
+        query.setText(text);
+        query.setFeatureVector(vector(text));
+        return query;
+    }
+
+    private static SearchHit hit(int docID, FeatureVector fv) {
+        SearchHit hit = new SearchHit();
+        hit.setDocID(docID);
+        hit.setDocno("doc" + docID);
+        hit.setFeatureVector(fv);
+        return hit;
+    }
+
+    // the score as computed before norms were cached: weight and normalize a copy in place
+    private static double expected(ScorerSMART scorer, SearchHit hit) throws Exception {
+        FeatureVector dfv = hit.getFeatureVector().deepCopy();
+        scorer.getDocTFWeight().weight(dfv);
+        scorer.getDocIDFWeight().weight(dfv);
+        scorer.getDocNormalizer().normalize(dfv);
+        double score = 0.0;
+        Iterator<String> it = scorer.qfv.iterator();
+        while (it.hasNext()) {
+            String feature = it.next();
+            score += dfv.getFeatureWeight(feature) * scorer.qfv.getFeatureWeight(feature);
+        }
+        return score;
+    }
+
+    // an index holding only document vectors, by docID
+    private static IndexWrapper index(final Map<Integer, FeatureVector> docs) {
+        return (IndexWrapper)Proxy.newProxyInstance(IndexWrapper.class.getClassLoader(),
+                new Class<?>[] {IndexWrapper.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getDocVector") && args[0] instanceof Integer)
+                    return docs.get(args[0]).deepCopy();
+                if (method.getName().equals("hashCode"))
+                    return System.identityHashCode(proxy);
+                if (method.getName().equals("equals"))
+                    return proxy == args[0];
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @Test
+    public void testScoreTwice() throws Exception {
+        ScorerSMART scorer = scorer("ltc.ltc");
+        scorer.setQuery(query("1", "falkland petroleum exploration"));
+        SearchHit hit = hit(1, vector("falkland islands petroleum petroleum exploration licences"));
+
+        double expected = expected(scorer, hit);
+        assertTrue(expected > 0);
+        assertEquals(expected, scorer.score(hit), DELTA);
+        assertEquals(expected, scorer.score(hit), DELTA);
+    }
+
+    @Test
+    public void testScoreAcrossQueries() throws Exception {
+        ScorerSMART scorer = scorer("lnc.ltc");
+        SearchHit hit = hit(1, vector("falkland islands petroleum petroleum exploration licences"));
+        // a partial vector, as a filtering accumulator builds, under the same docID
+        SearchHit partial = hit(1, vector("islands licences"));
+
+        scorer.setQuery(query("1", "falkland petroleum"));
+        double first = scorer.score(hit);
+        assertEquals(expected(scorer, hit), first, DELTA);
+        assertEquals(expected(scorer, partial), scorer.score(partial), DELTA);
+
+        scorer.setQuery(query("2", "islands licences"));
+        assertEquals(expected(scorer, hit), scorer.score(hit), DELTA);
+        assertEquals(expected(scorer, partial), scorer.score(partial), DELTA);
+
+        scorer.setQuery(query("1", "falkland petroleum"));
+        assertEquals(first, scorer.score(hit), DELTA);
+    }
+
+    @Test
+    public void testCachePerIndex() throws Exception {
+        Map<Integer, FeatureVector> trainDocs = new HashMap<Integer, FeatureVector>();
+        trainDocs.put(1, vector("falkland islands petroleum petroleum exploration licences"));
+        Map<Integer, FeatureVector> testDocs = new HashMap<Integer, FeatureVector>();
+        testDocs.put(1, vector("petroleum prices fall as exploration slows"));
+
+        DocumentNormCache cache = new DocumentNormCache();
+        ScorerSMART train = scorer("ltc.ltc");
+        train.setDocumentNormCache(cache);
+        train.setIndex(index(trainDocs));
+        ScorerSMART test = scorer("ltc.ltc");
+        test.setDocumentNormCache(cache);
+        test.setIndex(index(testDocs));
+
+        GQuery query = query("1", "petroleum exploration");
+        train.setQuery(query);
+        test.setQuery(query);
+        SearchHit trainHit = hit(1, trainDocs.get(1));
+        SearchHit testHit = hit(1, testDocs.get(1));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected(train, trainHit), train.score(trainHit), DELTA);
+            assertEquals(expected(test, testHit), test.score(testHit), DELTA);
+        }
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,73 @@
+package edu.gslis.docscoring.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.gslis.utils.Stopper;
+
+/**
+ * A stats file must read back what was written, and only for the stoplist it was built with.
+ */
+public class TestDocumentStatsFile {
+
+    private static Stopper stopper(String... words) {
+        Stopper stopper = new Stopper();
+        for (String word : words)
+            stopper.addStopword(word);
+        return stopper;
+    }
+
+    // an Indri-built file (a null index has analyzer "indri") with norms for ltc
+    private static String write(Stopper stopper) throws IOException {
+        File file = File.createTempFile("docstats", null);
+        file.deleteOnExit();
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(DocumentStatsFile.STOPPER, DocumentStatsFile.stopperName(stopper));
+        properties.put(DocumentStatsFile.ANALYZER, DocumentStatsFile.analyzerName(null));
+        properties.put(DocumentStatsFile.SPECS, "ltc");
+        DocumentStatsFile stats = DocumentStatsFile.create(file.getPath(), 3,
+                Arrays.asList(DocumentStatsFile.MAX_TF, DocumentStatsFile.normColumn("ltc")), properties);
+        stats.set(DocumentStatsFile.MAX_TF, 2, 7.0);
+        stats.set(DocumentStatsFile.normColumn("ltc"), 2, 1.5);
+        stats.close();
+        return file.getPath();
+    }
+
+    @Test
+    public void testReadBack() throws Exception {
+        String path = write(stopper("the", "of"));
+        DocumentStatsFile stats = DocumentStatsFile.open(path, null, stopper("of", "the"));
+        assertEquals(3, stats.getNumRows());
+        assertEquals("ltc", stats.getProperty(DocumentStatsFile.SPECS));
+        assertEquals(7.0, stats.get(DocumentStatsFile.MAX_TF, 2), 0.0);
+        assertEquals(1.5, stats.get(DocumentStatsFile.normColumn("ltc"), 2), 0.0);
+        assertEquals(0.0, stats.get(DocumentStatsFile.MAX_TF, 1), 0.0);
+        stats.close();
+    }
+
+    @Test
+    public void testStopperMismatch() throws Exception {
+        String path = write(null);
+        DocumentStatsFile.open(path, null, new Stopper()).close();
+        try {
+            DocumentStatsFile.open(path, null, stopper("the"));
+            fail("expected stats built unstopped to be rejected");
+        } catch (IOException e) {
+        }
+
+        path = write(stopper("the", "of"));
+        try {
+            DocumentStatsFile.open(path, null, stopper("the", "a"));
+            fail("expected stats built with another stoplist to be rejected");
+        } catch (IOException e) {
+        }
+    }
+}
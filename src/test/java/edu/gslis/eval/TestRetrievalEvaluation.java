@@ -0,0 +1,95 @@
+package edu.gslis.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.gslis.searchhits.SearchHits;
+
+/**
+ * testdata/eval holds a two-query run with score ties (d3/d4 and e2/e3, which trec_eval breaks
+ * by decreasing docno), an unjudged document (d9) and a query with no relevant documents (3).
+ * Expected values are worked out by hand from trec_eval's definitions of each measure.
+ */
+public class TestRetrievalEvaluation {
+    private static final double DELTA = 0.0001;
+
+    private RetrievalEvaluation evaluate(int numThreads) {
+        Qrels qrels = new Qrels("testdata/eval/qrels.test", true, 1);
+        RetrievalEvaluation eval = new RetrievalEvaluation(qrels);
+        eval.setCutoffs(new int[] {5, 10});
+        eval.setNumThreads(numThreads);
+        eval.evaluate(new RetrievalResults("testdata/eval/run.test"));
+        return eval;
+    }
+
+    @Test
+    public void testQueryStats() {
+        RetrievalEvaluation eval = evaluate(1);
+        assertEquals(2, eval.getQueryNames().size());
+        assertTrue(eval.getQueryStats("3") == null);
+
+        assertEquals(0.6095, eval.getQueryStat("1", RetrievalEvaluation.MAP), DELTA);
+        assertEquals(0.4000, eval.getQueryStat("1", RetrievalEvaluation.P + 5), DELTA);
+        assertEquals(0.3000, eval.getQueryStat("1", RetrievalEvaluation.P + 10), DELTA);
+        assertEquals(0.3333, eval.getQueryStat("1", RetrievalEvaluation.RPREC), DELTA);
+        assertEquals(0.4444, eval.getQueryStat("1", RetrievalEvaluation.BPREF), DELTA);
+        assertEquals(0.7623, eval.getQueryStat("1", RetrievalEvaluation.NDCG_CUT + 5), DELTA);
+        assertEquals(0.8688, eval.getQueryStat("1", RetrievalEvaluation.NDCG_CUT + 10), DELTA);
+
+        assertEquals(0.8333, eval.getQueryStat("2", RetrievalEvaluation.MAP), DELTA);
+        assertEquals(0.4000, eval.getQueryStat("2", RetrievalEvaluation.P + 5), DELTA);
+        assertEquals(0.2000, eval.getQueryStat("2", RetrievalEvaluation.P + 10), DELTA);
+        assertEquals(0.5000, eval.getQueryStat("2", RetrievalEvaluation.RPREC), DELTA);
+        assertEquals(0.5000, eval.getQueryStat("2", RetrievalEvaluation.BPREF), DELTA);
+        assertEquals(0.9197, eval.getQueryStat("2", RetrievalEvaluation.NDCG_CUT + 5), DELTA);
+    }
+
+    @Test
+    public void testAggregateStats() {
+        RetrievalEvaluation eval = evaluate(1);
+        assertEquals(0.7214, eval.getAggregateStat(RetrievalEvaluation.MAP), DELTA);
+        assertEquals(0.4000, eval.getAggregateStat(RetrievalEvaluation.P + 5), DELTA);
+        assertEquals(0.2500, eval.getAggregateStat(RetrievalEvaluation.P + 10), DELTA);
+        assertEquals(0.4167, eval.getAggregateStat(RetrievalEvaluation.RPREC), DELTA);
+        assertEquals(0.4722, eval.getAggregateStat(RetrievalEvaluation.BPREF), DELTA);
+        assertEquals(0.8410, eval.getAggregateStat(RetrievalEvaluation.NDCG_CUT + 5), DELTA);
+        assertEquals(10, eval.getAggregateStat(RetrievalEvaluation.NUM_RET), DELTA);
+        assertEquals(5, eval.getAggregateStat(RetrievalEvaluation.NUM_REL_RET), DELTA);
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        RetrievalEvaluation serial = evaluate(1);
+        RetrievalEvaluation parallel = evaluate(4);
+        assertEquals(serial.getQueryNames(), parallel.getQueryNames());
+        for (String queryName : serial.getQueryNames()) {
+            assertEquals(serial.getQueryStats(queryName), parallel.getQueryStats(queryName));
+        }
+    }
+
+    @Test
+    public void testParallelFailure() {
+        Qrels qrels = new Qrels("testdata/eval/qrels.test", true, 1);
+        RetrievalEvaluation eval = new RetrievalEvaluation(qrels);
+        eval.setNumThreads(2);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            eval.evaluate(new RunResults() {
+                public SearchHits getResultsForQuery(String queryTitle) {
+                    // the first call for a query only checks it has results; fail in the worker
+                    if (queryTitle.equals("2") && calls.incrementAndGet() > 1)
+                        throw new IllegalArgumentException("bad run");
+                    return new SearchHits();
+                }
+            });
+            fail("expected the failed query's exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("bad run", e.getMessage());
+        }
+    }
+}
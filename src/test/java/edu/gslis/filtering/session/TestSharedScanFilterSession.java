@@ -0,0 +1,124 @@
+package edu.gslis.filtering.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.gslis.docscoring.ScorerDirichlet;
+import edu.gslis.docscoring.support.CollectionStats;
+import edu.gslis.eval.Qrels;
+import edu.gslis.filtering.threshold.ThresholdFinderDummy;
+import edu.gslis.indexes.IndexWrapperIndriImpl;
+import edu.gslis.queries.GQuery;
+import edu.gslis.searchhits.SearchHit;
+import edu.gslis.searchhits.SearchHits;
+import edu.gslis.textrepresentation.FeatureVector;
+
+/**
+ * On a Porter-stemmed index, a shared scan must score a judged document exactly as the
+ * per-topic session does, including for a query term ("designed") that Indri stems.
+ */
+public class TestSharedScanFilterSession {
+    private static final String INDEX = "testdata/trectest.porter.indri";
+    private static final String JUDGED = "FT911-1";
+
+    @BeforeClass
+    public static void setUp() {
+        try
+        {
+            File tmpDir = new File("testdata/tmp");
+            tmpDir.mkdirs();
+
+            Process proc = Runtime.getRuntime().exec("tar xvfz testdata/trectest/trectest.tgz -C testdata/tmp");
+            proc.waitFor();
+            proc.destroy();
+
+            Process bi = Runtime.getRuntime().exec("/usr/local/bin/IndriBuildIndex testdata/build_params.trectest.porter");
+            BufferedReader br = new BufferedReader(new InputStreamReader(bi.getInputStream()));
+            while (br.readLine() != null) {
+            }
+            bi.destroy();
+
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(new File(INDEX));
+    }
+
+    private static ScorerDirichlet scorer(GQuery query) {
+        ScorerDirichlet scorer = new ScorerDirichlet();
+        scorer.setCollectionStats(new CollectionStats() {
+            {
+                docCount = 1047;
+                tokCount = 454038;
+            }
+            public double termCount(String term) {
+                return 100;
+            }
+            public double docCount(String term) {
+                return 50;
+            }
+            public void setStatSource(String statSource) {
+            }
+        });
+        scorer.setQuery(query);
+        return scorer;
+    }
+
+    private static SearchHit find(SearchHits hits, String docno) {
+        for (SearchHit hit : hits.hits()) {
+            if (hit.getDocno().equals(docno))
+                return hit;
+        }
+        fail(docno + " not accumulated");
+        return null;
+    }
+
+    @Test
+    public void testSameScoresAsPerTopic() {
+        IndexWrapperIndriImpl index = new IndexWrapperIndriImpl(INDEX);
+        Qrels qrels = new Qrels("testdata/filter/qrels.trectest", false, 1);
+        assertTrue(qrels.isRel("1", JUDGED));
+
+        GQuery query = new GQuery();
+        query.setTitle("1");
+        query.setText("jet flight designed");
+        query.setFeatureVector(new FeatureVector("jet flight designed", null));
+        query.setMetadata(FilterSession.NAME_OF_CONSTRAINT_FIELD, "#band(jet)");
+
+        SimpleFilterSessionImpl perTopic = new SimpleFilterSessionImpl(query, index, index, qrels,
+                scorer(query), new ThresholdFinderDummy());
+        perTopic.train();
+        SearchHits perTopicHits = perTopic.filter();
+
+        SharedScanFilterSession shared = new SharedScanFilterSession(index, index, qrels,
+                new ThresholdFinderDummy());
+        shared.addTopic(query, scorer(query));
+        shared.train();
+        SearchHits sharedHits = shared.filter().getSearchHits(query);
+
+        assertEquals(perTopicHits.size(), sharedHits.size());
+        SearchHit expected = find(perTopicHits, JUDGED);
+        SearchHit actual = find(sharedHits, JUDGED);
+        assertTrue(actual.getFeatureVector().getFeatureWeight("designed") > 0);
+        assertEquals(expected.getLength(), actual.getLength(), 0.0);
+        assertEquals(expected.getScore(), actual.getScore(), 0.0);
+
+        index.close();
+    }
+}
@@ -79,4 +79,16 @@ public class TestIndriIndexWrapper {
         assertTrue(hits.getHit(1).getDocno().equals("FT911-4057"));
 
     }
+    
+    @Test
+    public void testPooledRunQuery() {
+        IndexWrapperIndriImpl index = new IndexWrapperIndriImpl("testdata/trectest.indri", 3);
+        assertTrue(index.getEnvironmentPool().size() == 3);
+        
+        SearchHits hits = index.runQuery("raf cranwell", 100);
+        assertTrue(hits.size() == 2);
+        assertTrue(hits.getHit(0).getDocno().equals("FT911-1"));
+        
+        index.close();
+    }
 }